@@ -96,7 +96,7 @@ public class AccessFlags {
 		if (has(ACC_STRICT))
 			modifiers.add(Modifier.STRICTFP);
 
-		return EnumSet.copyOf(modifiers);
+		return modifiers.isEmpty() ? EnumSet.noneOf(Modifier.class) : EnumSet.copyOf(modifiers);
 	}
 
 	@Override
@@ -2,6 +2,8 @@ package dev.minco.javatransformer.api;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -10,7 +12,7 @@ import org.jetbrains.annotations.Contract;
 
 import dev.minco.javatransformer.internal.ClassPaths;
 
-public interface ClassPath extends Iterable<ClassInfo> {
+public interface ClassPath extends Iterable<ClassInfo>, AutoCloseable {
 	/**
 	 * Returns whether the given class name exists
 	 *
@@ -61,6 +63,28 @@ public interface ClassPath extends Iterable<ClassInfo> {
 	 */
 	boolean hasPath(Path path);
 
+	/**
+	 * Starts loading every path in this {@link ClassPath} and its parents on the given executor, so later lookups don't have to wait for them.
+	 * Paths are loaded in parallel, and big jars and folders are split up between the executor's threads.
+	 *
+	 * This {@link ClassPath} must not be closed until the returned future is done.
+	 *
+	 * @param executor Executor to load paths on
+	 * @return future which completes once every path has been loaded
+	 */
+	default CompletableFuture<Void> prefetch(Executor executor) {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Closes any files held open by this {@link ClassPath}. Its parent is not closed.
+	 *
+	 * The {@link ClassPath} can still be used afterwards and will open them again when needed,
+	 * but {@link ClassInfo}s it returned before being closed may fail to load.
+	 */
+	@Override
+	default void close() {}
+
 	@Contract(pure = true)
 	static @Nonnull ClassPath of(@Nonnull Path... paths) {
 		return of(ClassPaths.SystemClassPath.SYSTEM_CLASS_PATH, paths);
@@ -2,11 +2,7 @@ package dev.minco.javatransformer.api;
 
 import static com.github.javaparser.Providers.provider;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
@@ -19,19 +15,23 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.val;
 
@@ -39,6 +39,7 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseProblemException;
@@ -47,22 +48,32 @@ import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.TypeDeclaration;
 
 import dev.minco.javatransformer.internal.ByteCodeInfo;
+import dev.minco.javatransformer.internal.ClassPaths;
 import dev.minco.javatransformer.internal.SourceInfo;
 import dev.minco.javatransformer.internal.asm.AsmUtil;
-import dev.minco.javatransformer.internal.asm.FilteringClassWriter;
+import dev.minco.javatransformer.internal.asm.ClassPathTypeHierarchy;
 import dev.minco.javatransformer.internal.util.CachingSupplier;
 import dev.minco.javatransformer.internal.util.DefineClass;
 import dev.minco.javatransformer.internal.util.JVMUtil;
 import dev.minco.javatransformer.internal.util.NodeUtil;
-import dev.minco.javatransformer.internal.util.StreamUtil;
+import dev.minco.javatransformer.internal.zip.ZipArchive;
+import dev.minco.javatransformer.internal.zip.ZipArchiveWriter;
 
 @ToString
 public class JavaTransformer {
 	private final List<Transformer> transformers = new ArrayList<>();
 	private final SimpleMultiMap<String, Transformer> classTransformers = new SimpleMultiMap<>();
-	private final Map<String, byte[]> transformedFiles = new HashMap<>();
+	private final Map<String, byte[]> transformedFiles = Collections.synchronizedMap(new LinkedHashMap<>());
+	// identity of loaded, unchanged bytes -> where to copy their compressed form from when saving to a jar
+	private final Map<byte[], RawSource> unchangedEntries = Collections.synchronizedMap(new IdentityHashMap<>());
 	private final List<Consumer<JavaTransformer>> afterTransform = new ArrayList<>();
 	private ClassPath classPath = ClassPath.of();
+	@Nullable
+	private Executor executor;
+	private boolean streaming;
+	private int streamingBufferSize = 64;
+	@Nullable
+	private TransformCache cache;
 
 	/**
 	 * Used to get the path of the jar/folder containing a class
@@ -114,6 +125,7 @@ public class JavaTransformer {
 	}
 
 	private void load(@NonNull Path path, boolean saveTransformedResults) {
+		prefetchClassPath();
 		switch (PathType.of(path)) {
 			case JAR:
 				loadJar(path, saveTransformedResults);
@@ -125,7 +137,23 @@ public class JavaTransformer {
 		afterTransform.forEach(handler -> handler.accept(this));
 	}
 
+	/**
+	 * Starts loading the classpath in the background while the input is read, if there is an executor to load it on
+	 */
+	void prefetchClassPath() {
+		val executor = this.executor;
+		// a path which fails to load is tried again by the first lookup which needs it, so failures here can be ignored
+		if (executor != null)
+			classPath.prefetch(executor);
+	}
+
 	public void transform(@NonNull Path load, @NonNull Path save) {
+		if (streaming && PathType.of(load) == PathType.JAR && PathType.of(save) == PathType.JAR) {
+			new StreamingJarTransformer(this, streamingBufferSize).transform(load, save);
+			afterTransform.forEach(handler -> handler.accept(this));
+			return;
+		}
+
 		load(load, true);
 		save(save);
 
@@ -133,46 +161,99 @@ public class JavaTransformer {
 	}
 
 	private void loadFolder(Path input, boolean saveTransformedResults) {
-		try {
-			val searchPath = ClassPath.of(classPath, input);
+		val pending = new ArrayList<PendingResult>();
+		try (ClassPath searchPath = ClassPath.of(classPath, input)) {
+			// memoizes super classes for frames, only for this load as the search path is closed afterwards
+			val typeHierarchy = new ClassPathTypeHierarchy(searchPath);
 			Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
 				@Override
 				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
 					val relativeName = input.relativize(file).toString();
 
-					val supplier = transformBytes(() -> {
+					transformEntry(pending, relativeName, () -> {
 						try {
 							return Files.readAllBytes(file);
 						} catch (IOException e) {
 							throw new UncheckedIOException(e);
 						}
-					}, relativeName, searchPath);
-
-					saveTransformedResult(relativeName, supplier, saveTransformedResults);
+					}, searchPath, typeHierarchy, saveTransformedResults);
 
 					return FileVisitResult.CONTINUE;
 				}
 			});
+			awaitPendingResults(pending);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
 	private void loadJar(Path p, boolean saveTransformedResults) {
-		ZipEntry entry;
-		try (ZipInputStream is = new ZipInputStream(new BufferedInputStream(new FileInputStream(p.toFile())))) {
-			val searchPath = ClassPath.of(classPath, p);
-			while ((entry = is.getNextEntry()) != null) {
-				saveTransformedResult(entry.getName(), transformBytes(() -> StreamUtil.readFully(is), entry.getName(), searchPath), saveTransformedResults);
-			}
+		val pending = new ArrayList<PendingResult>();
+		try (
+			ZipArchive archive = ZipArchive.openShared(p);
+			ClassPath searchPath = ClassPath.of(classPath, p)) {
+			val lastModified = Files.getLastModifiedTime(p);
+			val jar = p.toAbsolutePath().normalize();
+			val typeHierarchy = new ClassPathTypeHierarchy(searchPath);
+			for (ZipArchive.Entry entry : archive.getEntries())
+				transformEntry(pending, entry.name, archive.supplier(entry), searchPath, typeHierarchy, saveTransformedResults, new RawSource(jar, lastModified, entry));
+			// entries are read from the archive until all results are in
+			awaitPendingResults(pending);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
-	private void saveTransformedResult(String relativeName, Supplier<byte[]> supplier, boolean saveTransformedResults) {
-		if (saveTransformedResults)
-			transformedFiles.put(relativeName.replace('\\', '/'), supplier.get());
+	private void transformEntry(List<PendingResult> pending, String relativeName, Supplier<byte[]> dataSupplier, ClassPath searchPath, ClassPathTypeHierarchy typeHierarchy, boolean saveTransformedResults) {
+		transformEntry(pending, relativeName, dataSupplier, searchPath, typeHierarchy, saveTransformedResults, null);
+	}
+
+	private void transformEntry(List<PendingResult> pending, String relativeName, Supplier<byte[]> dataSupplier, ClassPath searchPath, ClassPathTypeHierarchy typeHierarchy, boolean saveTransformedResults, @Nullable RawSource source) {
+		val executor = this.executor;
+		if (executor == null) {
+			val supplier = transformBytes(dataSupplier, relativeName, searchPath, typeHierarchy);
+			saveTransformedResult(relativeName, supplier, saveTransformedResults, supplier == dataSupplier ? source : null);
+			return;
+		}
+
+		val result = new PendingResult(relativeName, source);
+		result.bytes = CompletableFuture.supplyAsync(() -> {
+			val supplier = transformBytes(dataSupplier, relativeName, searchPath, typeHierarchy);
+			result.unchanged = supplier == dataSupplier;
+			return saveTransformedResults ? supplier.get() : null;
+		}, executor);
+		pending.add(result);
+	}
+
+	private void awaitPendingResults(List<PendingResult> pending) {
+		// results are stored in submission order so the output matches a sequential run
+		for (int i = 0; i < pending.size(); i++) {
+			val result = pending.get(i);
+			byte[] bytes;
+			try {
+				bytes = result.bytes.join();
+			} catch (CompletionException e) {
+				for (int j = i + 1; j < pending.size(); j++)
+					pending.get(j).bytes.cancel(false);
+				val cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new TransformationException("Failed to transform " + result.relativeName, cause);
+			}
+			if (bytes != null)
+				saveTransformedResult(result.relativeName, () -> bytes, true, result.unchanged ? result.source : null);
+		}
+	}
+
+	private void saveTransformedResult(String relativeName, Supplier<byte[]> supplier, boolean saveTransformedResults, @Nullable RawSource unchangedSource) {
+		if (!saveTransformedResults)
+			return;
+		val bytes = supplier.get();
+		transformedFiles.put(relativeName.replace('\\', '/'), bytes);
+		if (unchangedSource != null)
+			unchangedEntries.put(bytes, unchangedSource);
 	}
 
 	private void saveFolder(Path output) {
@@ -192,23 +273,51 @@ public class JavaTransformer {
 	}
 
 	private void saveJar(Path jar) {
-		try (ZipOutputStream os = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar.toFile())))) {
+		// source jars which are still unmodified since loading, entries which weren't changed are copied from these without recompressing
+		val sources = new HashMap<Path, ZipArchive>();
+		val output = jar.toAbsolutePath().normalize();
+		try (ZipArchiveWriter os = new ZipArchiveWriter(jar)) {
 			transformedFiles.forEach(((relativeName, bytes) -> {
 				try {
-					os.putNextEntry(new ZipEntry(relativeName));
-					os.write(bytes);
-					os.closeEntry();
+					val source = unchangedEntries.get(bytes);
+					val archive = source == null || !source.entry.name.equals(relativeName) ? null : openSource(sources, source, output);
+					if (archive != null)
+						os.copy(archive, source.entry);
+					else
+						os.write(relativeName, bytes);
 				} catch (IOException e) {
 					throw new UncheckedIOException(e);
 				}
 			}));
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			for (ZipArchive archive : sources.values()) {
+				try {
+					if (archive != null)
+						archive.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
 		}
 	}
 
+	@Nullable
+	private static ZipArchive openSource(Map<Path, ZipArchive> sources, RawSource source, Path output) throws IOException {
+		if (sources.containsKey(source.jar))
+			return sources.get(source.jar);
+
+		ZipArchive archive = null;
+		if (!source.jar.equals(output) && Files.isRegularFile(source.jar) && source.lastModified.equals(Files.getLastModifiedTime(source.jar)))
+			archive = ZipArchive.open(source.jar);
+		sources.put(source.jar, archive);
+		return archive;
+	}
+
 	public void clear() {
 		transformedFiles.clear();
+		unchangedEntries.clear();
 	}
 
 	public void addTransformer(@NonNull Transformer.TargetedTransformer t) {
@@ -271,40 +380,57 @@ public class JavaTransformer {
 				+ "\nClass data: " + new String(bytes, Charset.forName("UTF-8")));
 		});
 
-		transformClassInfo(new SourceInfo(supplier, name, classPath));
+		val sourceInfo = new SourceInfo(supplier, name, classPath);
+		transformClassInfo(sourceInfo);
+
+		if (!supplier.isCached() || !sourceInfo.isModified())
+			return data;
 
-		return supplier.isCached() ? () -> supplier.get().getParentNode().get().toString().getBytes(Charset.forName("UTF-8")) : data;
+		return () -> supplier.get().getParentNode().get().toString().getBytes(Charset.forName("UTF-8"));
 	}
 
 	public Supplier<byte[]> transformClass(@NonNull Supplier<byte[]> data, @NonNull String name) {
+		return transformClass(data, name, classPath);
+	}
+
+	/**
+	 * @param classPath used to find super classes when frames need to be computed
+	 */
+	public Supplier<byte[]> transformClass(@NonNull Supplier<byte[]> data, @NonNull String name, @NonNull ClassPath classPath) {
+		return transformClass(data, name, classPath, null);
+	}
+
+	/**
+	 * @param typeHierarchy super classes of classPath, shared between the classes transformed with it, or null to only use one for this class
+	 */
+	private Supplier<byte[]> transformClass(Supplier<byte[]> data, String name, ClassPath classPath, @Nullable ClassPathTypeHierarchy typeHierarchy) {
 		if (!shouldTransform(name))
 			return data;
 
 		AsmUtil.Holder<ClassReader> readerHolder = new AsmUtil.Holder<>();
-		CachingSupplier<ClassNode> supplier = CachingSupplier.of(() -> AsmUtil.getClassNode(data.get(), readerHolder));
+		AsmUtil.Holder<List<MethodNode>> originalMethods = new AsmUtil.Holder<>();
+		CachingSupplier<ClassNode> supplier = CachingSupplier.of(() -> {
+			val node = AsmUtil.getClassNode(data.get(), readerHolder);
+			originalMethods.value = new ArrayList<>(node.methods);
+			return node;
+		});
 
 		val filters = new HashMap<String, String>();
 
-		int flags_ = ClassWriter.COMPUTE_MAXS;
-		{
-			val byteCodeInfo = new ByteCodeInfo(supplier, name, filters);
-			transformClassInfo(byteCodeInfo);
-			if (byteCodeInfo.hasChangedMethodControlFlow) {
-				flags_ |= ClassWriter.COMPUTE_FRAMES;
-			}
-		}
-		final int flags = flags_;
+		val byteCodeInfo = new ByteCodeInfo(supplier, name, filters);
+		transformClassInfo(byteCodeInfo);
 
-		if (!supplier.isCached())
+		// only reading the class doesn't require writing it again
+		if (!supplier.isCached() || !byteCodeInfo.isModified())
 			return data;
 
+		// frames are only computed for methods which aren't copied as is
+		val flags = byteCodeInfo.hasChangedMethodControlFlow ? ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
+		val hierarchy = !byteCodeInfo.hasChangedMethodControlFlow ? null : typeHierarchy != null ? typeHierarchy : new ClassPathTypeHierarchy(classPath);
 		return () -> {
 			if (readerHolder.value == null)
 				throw new IllegalStateException();
-			FilteringClassWriter classWriter = new FilteringClassWriter(readerHolder.value, flags);
-			classWriter.filters.putAll(filters);
-			supplier.get().accept(classWriter);
-			return classWriter.toByteArray();
+			return AsmUtil.writeClass(readerHolder.value, supplier.get(), originalMethods.value, byteCodeInfo::isMethodModified, flags, filters, hierarchy);
 		};
 	}
 
@@ -313,11 +439,28 @@ public class JavaTransformer {
 		classTransformers.get(editor.getName()).forEach((it) -> it.transform(editor));
 	}
 
+	/**
+	 * @return false if {@link #transformBytes} will always return the data supplier for this file unchanged
+	 */
+	boolean shouldTransformFile(String relativeName) {
+		if (!relativeName.endsWith(".class") && !relativeName.endsWith(".java"))
+			return false;
+		String className = JVMUtil.fileNameToClassName(relativeName);
+		return !className.endsWith(".package-info") && shouldTransform(className);
+	}
+
 	private boolean shouldTransform(String className) {
 		return !transformers.isEmpty() || !classTransformers.get(className).isEmpty();
 	}
 
 	Supplier<byte[]> transformBytes(@Nullable Supplier<byte[]> dataSupplier, String relativeName, @Nullable ClassPath classPath) {
+		return transformBytes(dataSupplier, relativeName, classPath, null);
+	}
+
+	/**
+	 * @param typeHierarchy super classes of classPath, shared between the files transformed with it, or null to not share them
+	 */
+	Supplier<byte[]> transformBytes(@Nullable Supplier<byte[]> dataSupplier, String relativeName, @Nullable ClassPath classPath, @Nullable ClassPathTypeHierarchy typeHierarchy) {
 		boolean isClass = relativeName.endsWith(".class");
 		boolean isSource = relativeName.endsWith(".java");
 
@@ -328,8 +471,15 @@ public class JavaTransformer {
 			if (className.endsWith(".package-info"))
 				return dataSupplier;
 
+			val cache = this.cache;
+			if (cache != null && dataSupplier != null && shouldTransform(className)) {
+				val fingerprint = getFingerprint(className, classPath == null ? this.classPath : classPath);
+				if (fingerprint != null)
+					return transformCached(cache, fingerprint, dataSupplier, relativeName, className, isClass, classPath, typeHierarchy);
+			}
+
 			if (isClass)
-				return transformClass(dataSupplier, className);
+				return transformClass(dataSupplier, className, classPath == null ? this.classPath : classPath, typeHierarchy);
 
 			return transformJava(dataSupplier, className, classPath);
 		}
@@ -337,6 +487,54 @@ public class JavaTransformer {
 		return dataSupplier;
 	}
 
+	private Supplier<byte[]> transformCached(TransformCache cache, String fingerprint, Supplier<byte[]> dataSupplier, String relativeName, String className, boolean isClass, @Nullable ClassPath classPath, @Nullable ClassPathTypeHierarchy typeHierarchy) {
+		val bytes = dataSupplier.get();
+		val key = TransformCache.key(relativeName.replace('\\', '/'), fingerprint, bytes);
+		val cached = cache.get(key, dataSupplier);
+		if (cached != null)
+			return cached;
+
+		Supplier<byte[]> data = () -> bytes;
+		val transformed = isClass ? transformClass(data, className, classPath == null ? this.classPath : classPath, typeHierarchy) : transformJava(data, className, classPath);
+		if (transformed == data) {
+			cache.putUnchanged(key);
+			return dataSupplier;
+		}
+
+		val result = transformed.get();
+		cache.put(key, result);
+		return () -> result;
+	}
+
+	/**
+	 * @param searchPath classpath the class is transformed with, which includes the input it is being loaded from
+	 * @return combined fingerprint of all transformers which run on the given class and of the search path,
+	 * or null if any of them can't be cached
+	 */
+	@Nullable
+	private String getFingerprint(String className, ClassPath searchPath) {
+		// transformers and frame computation can see other classes in the input and classpath, so results depend on them too
+		val classPathFingerprint = ClassPaths.fingerprint(searchPath);
+		if (classPathFingerprint == null)
+			return null;
+		val fingerprint = new StringBuilder(classPathFingerprint).append('\0');
+		for (Transformer transformer : transformers)
+			if (!appendFingerprint(fingerprint, transformer))
+				return null;
+		for (Transformer transformer : classTransformers.get(className))
+			if (!appendFingerprint(fingerprint, transformer))
+				return null;
+		return fingerprint.toString();
+	}
+
+	private static boolean appendFingerprint(StringBuilder builder, Transformer transformer) {
+		val fingerprint = transformer.getFingerprint();
+		if (fingerprint == null)
+			return false;
+		builder.append(transformer.getClass().getName()).append('\0').append(fingerprint).append('\0');
+		return true;
+	}
+
 	public Class<?> defineClass(ClassLoader classLoader, String name) {
 		byte[] result = Objects.requireNonNull(transformedFiles.get(JVMUtil.classNameToFileName(name)));
 		return DefineClass.defineClass(classLoader, name, result);
@@ -362,6 +560,92 @@ public class JavaTransformer {
 		this.classPath = classPath;
 	}
 
+	@Nullable
+	public Executor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * Sets the executor used to transform entries when loading a jar or folder
+	 *
+	 * If set, entries are transformed in parallel and all {@link Transformer}s must be thread-safe.
+	 * Results are collected in the same order as a sequential run.
+	 * The {@link #getClassPath() classpath} is also {@link ClassPath#prefetch prefetched} on it while the input is read.
+	 *
+	 * @param executor Executor to use, for example a {@link java.util.concurrent.ForkJoinPool}, or null to transform on the calling thread
+	 */
+	public void setExecutor(@Nullable Executor executor) {
+		this.executor = executor;
+	}
+
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
+	/**
+	 * Sets whether {@link #transform(Path, Path)} streams entries directly from an input jar to an output jar
+	 *
+	 * When streaming, each entry is written as soon as it has been transformed instead of being stored in {@link #getTransformedFiles()},
+	 * so memory use is bounded by {@link #getStreamingBufferSize()} rather than the size of the jar.
+	 * {@link #getAfterTransform()} handlers are still called, but will not see any transformed files.
+	 * Failures writing the output jar are thrown as {@link java.io.UncheckedIOException}s.
+	 * Off by default, so transformed files are stored unless this is enabled.
+	 *
+	 * @param streaming true to stream jar to jar transformations
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public int getStreamingBufferSize() {
+		return this.streamingBufferSize;
+	}
+
+	/**
+	 * @param streamingBufferSize Maximum number of entries waiting to be written when streaming with an {@link #setExecutor(Executor) executor}
+	 */
+	public void setStreamingBufferSize(int streamingBufferSize) {
+		if (streamingBufferSize < 1)
+			throw new IllegalArgumentException("streamingBufferSize must be positive, got " + streamingBufferSize);
+		this.streamingBufferSize = streamingBufferSize;
+	}
+
+	@Nullable
+	public Path getCacheDirectory() {
+		val cache = this.cache;
+		return cache == null ? null : cache.getDirectory();
+	}
+
+	/**
+	 * Sets a directory in which transformed class and source files are cached across runs
+	 *
+	 * Files are only cached when every transformer which runs on them provides a {@link Transformer#getFingerprint() fingerprint}.
+	 * Results are also keyed by the files in the {@link #getClassPath() classpath} and in the input which is being transformed,
+	 * as transformers and frame computation can see any of them, so changing a dependency or any other file in the input invalidates them.
+	 * When a cached result exists for the same file contents and fingerprints, the transformers are not run for that file.
+	 *
+	 * @param cacheDirectory Directory to cache results in, or null to disable caching
+	 */
+	public void setCacheDirectory(@Nullable Path cacheDirectory) {
+		this.cache = cacheDirectory == null ? null : new TransformCache(cacheDirectory);
+	}
+
+	@RequiredArgsConstructor
+	private static class PendingResult {
+		final String relativeName;
+		@Nullable
+		final RawSource source;
+		CompletableFuture<byte[]> bytes;
+		volatile boolean unchanged;
+	}
+
+	@RequiredArgsConstructor
+	private static class RawSource {
+		final Path jar;
+		final FileTime lastModified;
+		final ZipArchive.Entry entry;
+	}
+
 	private enum PathType {
 		JAR,
 		FOLDER;
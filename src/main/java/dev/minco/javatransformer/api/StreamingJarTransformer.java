@@ -0,0 +1,190 @@
+package dev.minco.javatransformer.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+import dev.minco.javatransformer.internal.asm.ClassPathTypeHierarchy;
+import dev.minco.javatransformer.internal.zip.ZipArchive;
+import dev.minco.javatransformer.internal.zip.ZipArchiveWriter;
+
+/**
+ * Transforms a jar into another jar while only holding a bounded number of entries in memory
+ *
+ * Entries are read and transformed on the {@link JavaTransformer}'s executor if one is set,
+ * and written by a writer thread in central directory order. Each entry is dropped as soon as it has been written.
+ * Entries which no transformer changed are copied without being decompressed and compressed again.
+ */
+@RequiredArgsConstructor
+final class StreamingJarTransformer {
+	private static final PendingEntry END = new PendingEntry(null, null);
+	private static final CompletableFuture<byte[]> UNCHANGED = CompletableFuture.completedFuture(null);
+	private final JavaTransformer transformer;
+	private final int bufferSize;
+
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof CompletionException && t.getCause() != null)
+			t = t.getCause();
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t instanceof IOException)
+			return new UncheckedIOException((IOException) t);
+		return new TransformationException(t);
+	}
+
+	/**
+	 * @return the archive's entries, with duplicate names resolved like {@link JavaTransformer#getTransformedFiles()} does when loading:
+	 * at the position of the first entry with that name, but with the data of the last one
+	 */
+	private static Collection<ZipArchive.Entry> entriesToWrite(ZipArchive archive) {
+		val entries = new LinkedHashMap<String, ZipArchive.Entry>();
+		for (ZipArchive.Entry entry : archive.getEntries())
+			entries.put(entry.name, entry);
+		return entries.values();
+	}
+
+	void transform(Path input, Path output) {
+		val executor = transformer.getExecutor();
+		transformer.prefetchClassPath();
+		try (
+			ZipArchive archive = ZipArchive.openShared(input);
+			ClassPath searchPath = ClassPath.of(transformer.getClassPath(), input);
+			ZipArchiveWriter os = new ZipArchiveWriter(output)) {
+			val typeHierarchy = new ClassPathTypeHierarchy(searchPath);
+			if (executor == null) {
+				val writer = new Writer(archive, os);
+				for (ZipArchive.Entry entry : entriesToWrite(archive)) {
+					val data = archive.supplier(entry);
+					val transformed = transformer.transformBytes(data, entry.name, searchPath, typeHierarchy);
+					writer.write(entry, transformed == data ? null : transformed.get());
+				}
+				return;
+			}
+
+			transformInParallel(archive, os, searchPath, typeHierarchy, executor, output);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void transformInParallel(ZipArchive archive, ZipArchiveWriter os, ClassPath searchPath, ClassPathTypeHierarchy typeHierarchy, Executor executor, Path output) {
+		val queue = new ArrayBlockingQueue<PendingEntry>(bufferSize);
+		val writer = new Writer(archive, os);
+		val writerThread = new Thread(() -> writer.drain(queue), "JavaTransformer writer for " + output.getFileName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		Throwable failure = null;
+		InterruptedException interrupted = null;
+		try {
+			val entries = entriesToWrite(archive).iterator();
+			while (writer.failure == null && entries.hasNext()) {
+				val entry = entries.next();
+				if (!transformer.shouldTransformFile(entry.name)) {
+					queue.put(new PendingEntry(entry, UNCHANGED));
+					continue;
+				}
+				queue.put(new PendingEntry(entry, CompletableFuture.supplyAsync(() -> {
+					val data = archive.supplier(entry);
+					val transformed = transformer.transformBytes(data, entry.name, searchPath, typeHierarchy);
+					return transformed == data ? null : transformed.get();
+				}, executor)));
+			}
+		} catch (Throwable t) {
+			failure = t;
+			if (t instanceof InterruptedException)
+				interrupted = (InterruptedException) t;
+			writer.aborted = true;
+		}
+
+		// the writer isn't interrupted, as that would close the shared archive's channel if it was reading from it,
+		// so is told to stop through the queue and waited for, as the output is closed once this returns
+		while (true) {
+			try {
+				queue.put(END);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = e;
+				writer.aborted = true;
+			}
+		}
+		while (true) {
+			try {
+				writerThread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = e;
+				writer.aborted = true;
+			}
+		}
+		if (interrupted != null) {
+			Thread.currentThread().interrupt();
+			if (failure == null)
+				failure = interrupted;
+		}
+
+		if (failure == null)
+			failure = writer.failure;
+		if (failure != null)
+			throw rethrow(failure);
+	}
+
+	@RequiredArgsConstructor
+	private static class PendingEntry {
+		final ZipArchive.Entry entry;
+		// completes with null if the entry was not changed
+		final CompletableFuture<byte[]> bytes;
+	}
+
+	@RequiredArgsConstructor
+	private static class Writer {
+		private final ZipArchive archive;
+		private final ZipArchiveWriter os;
+		volatile Throwable failure;
+		// set when the reader stops early, so the remaining entries are skipped
+		volatile boolean aborted;
+
+		void write(ZipArchive.Entry entry, @Nullable byte[] bytes) throws IOException {
+			if (bytes == null)
+				os.copy(archive, entry);
+			else
+				os.write(entry.name, bytes);
+		}
+
+		void drain(BlockingQueue<PendingEntry> queue) {
+			try {
+				while (true) {
+					val entry = queue.take();
+					if (entry == END)
+						return;
+					// keep taking entries after a failure so the reader never blocks on a full queue
+					if (failure != null || aborted) {
+						entry.bytes.cancel(false);
+						continue;
+					}
+					try {
+						write(entry.entry, entry.bytes.join());
+					} catch (Throwable t) {
+						failure = t;
+					}
+				}
+			} catch (InterruptedException e) {
+				failure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package dev.minco.javatransformer.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * On disk cache of transformed class and source files
+ *
+ * Entries are keyed by a SHA-256 hash of the file's name and bytes and the fingerprints of the transformers which ran on it
+ * and of the classpath, so a cache directory can be shared between runs and between different transformer configurations.
+ */
+@RequiredArgsConstructor
+final class TransformCache {
+	private static final int FORMAT_VERSION = 1;
+	private static final byte UNCHANGED = 0;
+	private static final byte TRANSFORMED = 1;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	@Getter
+	private final Path directory;
+
+	static String key(String relativeName, String fingerprint, byte[] data) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new TransformationException(e);
+		}
+		digest.update((FORMAT_VERSION + "\0" + relativeName + '\0' + fingerprint + '\0').getBytes(StandardCharsets.UTF_8));
+		digest.update(data);
+
+		val hash = digest.digest();
+		val key = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			key[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+			key[i * 2 + 1] = HEX[hash[i] & 0xF];
+		}
+		return new String(key);
+	}
+
+	private Path file(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+	}
+
+	/**
+	 * @param key      key from {@link #key(String, String, byte[])}
+	 * @param original supplier of the untransformed data
+	 * @return original if the cached result is unchanged, a supplier of the cached result, or null if there is no cached result
+	 */
+	@Nullable
+	Supplier<byte[]> get(String key, Supplier<byte[]> original) {
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(file(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (bytes.length == 1 && bytes[0] == UNCHANGED)
+			return original;
+		if (bytes.length == 0 || bytes[0] != TRANSFORMED)
+			return null;
+		val result = Arrays.copyOfRange(bytes, 1, bytes.length);
+		return () -> result;
+	}
+
+	void putUnchanged(String key) {
+		write(key, new byte[]{UNCHANGED});
+	}
+
+	void put(String key, byte[] transformed) {
+		val bytes = new byte[transformed.length + 1];
+		bytes[0] = TRANSFORMED;
+		System.arraycopy(transformed, 0, bytes, 1, transformed.length);
+		write(key, bytes);
+	}
+
+	private void write(String key, byte[] bytes) {
+		val file = file(key);
+		try {
+			Files.createDirectories(file.getParent());
+			// written to a temporary file first so concurrent readers never see a partially written entry
+			val temp = Files.createTempFile(file.getParent(), key, ".tmp");
+			try {
+				Files.write(temp, bytes);
+				try {
+					Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -2,12 +2,25 @@ package dev.minco.javatransformer.api;
 
 import java.util.Collection;
 
+import org.jetbrains.annotations.Nullable;
+
 public interface Transformer {
 	/**
 	 * @param editor editor instance associated with a class
 	 */
 	void transform(ClassInfo editor);
 
+	/**
+	 * Used as part of the key when {@link JavaTransformer#setCacheDirectory caching} transformed classes.
+	 * Must change whenever this transformer could produce different output for the same input.
+	 *
+	 * @return fingerprint of this transformer's behaviour, or null if classes it runs on should not be cached
+	 */
+	@Nullable
+	default String getFingerprint() {
+		return null;
+	}
+
 	interface TargetedTransformer extends Transformer {
 		/**
 		 * @return List of classes which this transformer will run on
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -47,15 +48,20 @@ import dev.minco.javatransformer.internal.util.TypeUtil;
  */
 @Data
 public class Type {
+	// must be initialised before the constants below, which are interned
+	private static final int INTERNED_LIMIT = 1 << 16;
+	private static final ConcurrentHashMap<String, Type> internedByDescriptor = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, Type> internedBySignature = new ConcurrentHashMap<>();
+
 	public static final Type UNKNOWN = new Type("Ljava/lang/Object;", "Tunknown;");
 	public static final Type WILDCARD = new Type("Ljava/lang/Object;", "*");
 	public static final Type OBJECT = Type.of("java.lang.Object");
-	public static final Type BOOLEAN = new Type("Z");
-	public static final Type DOUBLE = new Type("D");
-	public static final Type FLOAT = new Type("F");
-	public static final Type INT = new Type("I");
-	public static final Type LONG = new Type("L");
-	public static final Type CHAR = new Type("C");
+	public static final Type BOOLEAN = ofDescriptor("Z");
+	public static final Type DOUBLE = ofDescriptor("D");
+	public static final Type FLOAT = ofDescriptor("F");
+	public static final Type INT = ofDescriptor("I");
+	public static final Type LONG = ofDescriptor("L");
+	public static final Type CHAR = ofDescriptor("C");
 	public static final Type STRING = Type.of("java.lang.String");
 	public static final Type STATIC_META_CLASS = new Type("Ljvm/STATIC;", "Ljvm/STATIC;");
 	public static final Type ANNOTATION = Type.of("java.lang.annotation.Annotation");
@@ -91,6 +97,34 @@ public class Type {
 		this(descriptor, null);
 	}
 
+	/**
+	 * Same as {@link #Type(String, String)}, but returns a shared instance if an equal type was made recently
+	 *
+	 * Types made while reading classes repeat a lot, so this saves parsing and keeping the same type many times.
+	 */
+	public static Type ofDescriptor(String descriptor, @Nullable String signature) {
+		if (signature != null && (signature.isEmpty() || signature.equals(descriptor)))
+			signature = null;
+
+		// the descriptor of a type is determined by its signature, except for type parameters with different bounds
+		val interned = signature == null ? internedByDescriptor : internedBySignature;
+		val key = signature == null ? descriptor : signature;
+		val existing = interned.get(key);
+		if (existing != null)
+			return existing.descriptor.equals(descriptor) ? existing : new Type(descriptor, signature);
+
+		val type = new Type(descriptor, signature);
+		// bounded by starting over, as types which are still used often are soon interned again
+		if (interned.size() >= INTERNED_LIMIT)
+			interned.clear();
+		val raced = interned.putIfAbsent(key, type);
+		return raced != null && raced.descriptor.equals(descriptor) ? raced : type;
+	}
+
+	public static Type ofDescriptor(String descriptor) {
+		return ofDescriptor(descriptor, null);
+	}
+
 	private static void checkDescriptor(String descriptor) {
 		if (descriptor.charAt(0) == 'T')
 			throw new TransformationException("Invalid descriptor '" + descriptor + "'");
@@ -117,7 +151,7 @@ public class Type {
 		// TODO: 23/01/2016 Handle inner classes properly? currently depend on following naming standards
 		// depends on: lower case package names, uppercase first letter of class name
 		String realType = ResolutionContext.extractReal(fullClassName);
-		val type = new Type('L' + JVMUtil.classNameToJLSName(realType) + ';');
+		val type = ofDescriptor('L' + JVMUtil.classNameToJLSName(realType) + ';');
 
 		String genericType = ResolutionContext.extractGeneric(fullClassName);
 		if (genericType == null)
@@ -147,7 +181,7 @@ public class Type {
 		for (int i = 0; i < parsedDesc.size(); i++) {
 			String real = parsedDesc.get(i);
 			String generic = parsedSignature == null ? null : parsedSignature.get(i);
-			types.add(new Type(real, generic));
+			types.add(ofDescriptor(real, generic));
 		}
 
 		return types;
@@ -155,9 +189,9 @@ public class Type {
 
 	public static Type ofSignature(String signature) {
 		if (signature.charAt(0) == 'T')
-			return new Type("Ljava/lang/Object;", signature);
+			return ofDescriptor("Ljava/lang/Object;", signature);
 
-		return new Type(ResolutionContext.extractReal(signature), signature);
+		return ofDescriptor(ResolutionContext.extractReal(signature), signature);
 	}
 
 	public boolean isPrimitiveType() {
@@ -238,7 +272,7 @@ public class Type {
 		val type = getDescriptorType();
 		if (type != DescriptorType.ARRAY)
 			throw new UnsupportedOperationException("Can't get array contained type for: " + this);
-		return new Type(descriptor.substring(1), signatureElseDescriptor().substring(1));
+		return ofDescriptor(descriptor.substring(1), signatureElseDescriptor().substring(1));
 	}
 
 	public boolean hasTypeArguments() {
@@ -1,7 +1,9 @@
 package dev.minco.javatransformer.api.code;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -11,6 +13,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.With;
 
+import org.jetbrains.annotations.Nullable;
+
 import dev.minco.javatransformer.api.TransformationException;
 import dev.minco.javatransformer.api.Type;
 
@@ -63,7 +67,13 @@ public interface CodeFragment {
 		AFTER
 	}
 
-	interface MethodCall extends CodeFragment, HasContainingClassType, HasName {}
+	interface MethodCall extends CodeFragment, HasContainingClassType, HasName {
+		/**
+		 * @return descriptor of the called method, for example {@code (Ljava/lang/String;)V}
+		 */
+		@NonNull
+		String getDescriptor();
+	}
 
 	interface FieldAccess extends CodeFragment, HasContainingClassType, HasName {}
 
@@ -76,9 +86,55 @@ public interface CodeFragment {
 	interface New extends CodeFragment {}
 
 	/**
-	 * Marker interface, the entire body of a method
+	 * The entire body of a method
 	 */
-	interface Body extends CodeFragment {}
+	interface Body extends CodeFragment {
+		/**
+		 * Makes several insertions into fragments of this method together
+		 *
+		 * Insertions are queued with the given batch. Byte code implementations check them all against the method as it was before the batch,
+		 * then make them in one pass, which is much faster than inserting one at a time when there are many.
+		 * By default they are made one at a time, in the order they were queued.
+		 */
+		default void edit(@NonNull Consumer<Batch> edits) {
+			List<Runnable> insertions = new ArrayList<>();
+			edits.accept((target, codeFragment, position, insertionOptions) -> insertions.add(() -> target.insert(codeFragment, position, insertionOptions)));
+			insertions.forEach(Runnable::run);
+		}
+
+		/**
+		 * Finds calls in this method to methods matching all the given filters
+		 *
+		 * @param owner type the called method is a member of, or null for any
+		 * @param name name of the called method, or null for any
+		 * @param descriptor descriptor of the called method, or null for any
+		 * @return the matching calls, in order
+		 */
+		default List<MethodCall> findMethodCalls(@Nullable Type owner, @Nullable String name, @Nullable String descriptor) {
+			List<MethodCall> calls = new ArrayList<>();
+			for (MethodCall call : findFragments(MethodCall.class))
+				if ((name == null || name.equals(call.getName())) &&
+					(owner == null || owner.descriptor.equals(call.getContainingClassType().descriptor)) &&
+					(descriptor == null || descriptor.equals(call.getDescriptor())))
+					calls.add(call);
+			return calls;
+		}
+	}
+
+	/**
+	 * Queues insertions for {@link Body#edit}
+	 */
+	@FunctionalInterface
+	interface Batch {
+		/**
+		 * Queues inserting codeFragment relative to target, which must be a fragment of the method being edited
+		 */
+		void insert(@NonNull CodeFragment target, @NonNull CodeFragment codeFragment, @NonNull InsertionPosition position, @NonNull InsertionOptions insertionOptions);
+
+		default void insert(@NonNull CodeFragment target, @NonNull CodeFragment codeFragment, @NonNull InsertionPosition position) {
+			insert(target, codeFragment, position, new InsertionOptions());
+		}
+	}
 
 	@FunctionalInterface
 	interface HasContainingClassType {
@@ -3,7 +3,6 @@ package dev.minco.javatransformer.internal;
 import static dev.minco.javatransformer.api.code.IntermediateValue.LocationType.LOCAL;
 import static dev.minco.javatransformer.api.code.IntermediateValue.LocationType.STACK;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -12,27 +11,32 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.val;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 import org.objectweb.asm.tree.analysis.Frame;
 
 import dev.minco.javatransformer.api.AccessFlags;
 import dev.minco.javatransformer.api.Parameter;
+import dev.minco.javatransformer.api.TransformationException;
 import dev.minco.javatransformer.api.Type;
 import dev.minco.javatransformer.api.code.CodeFragment;
 import dev.minco.javatransformer.api.code.IntermediateValue;
@@ -45,14 +49,70 @@ import dev.minco.javatransformer.internal.util.CollectionUtil;
 import dev.minco.javatransformer.internal.util.JVMUtil;
 
 class AsmCodeFragmentGenerator implements Opcodes {
-	static Class<?> concreteImplementation(Class<?> interfaceType) {
+	private static final int[] METHOD_CALL_OPCODES = {INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE};
+	private static final int[] FIELD_LOAD_OPCODES = {GETFIELD, GETSTATIC};
+	private static final int[] FIELD_STORE_OPCODES = {PUTFIELD, PUTSTATIC};
+	private static final int[] FIELD_ACCESS_OPCODES = {GETFIELD, GETSTATIC, PUTFIELD, PUTSTATIC};
+	private static final int[] RETURN_OPCODES = {IRETURN, LRETURN, FRETURN, DRETURN, ARETURN, RETURN};
+	private static final int[] NEW_OPCODES = {NEW};
+	private static final int[] NO_OPCODES = {};
+
+	/**
+	 * @return opcodes of the instructions which can be wrapped as the given fragment type
+	 */
+	static int[] opcodes(Class<?> interfaceType) {
 		if (interfaceType == CodeFragment.Body.class)
-			return MethodNodeInfoCodeFragment.class;
+			return NO_OPCODES;
 		if (interfaceType == CodeFragment.MethodCall.class)
-			return MethodCall.class;
+			return METHOD_CALL_OPCODES;
+		if (interfaceType == CodeFragment.FieldAccess.class)
+			return FIELD_ACCESS_OPCODES;
+		if (interfaceType == CodeFragment.FieldLoad.class)
+			return FIELD_LOAD_OPCODES;
+		if (interfaceType == CodeFragment.FieldStore.class)
+			return FIELD_STORE_OPCODES;
+		if (interfaceType == CodeFragment.Return.class)
+			return RETURN_OPCODES;
+		if (interfaceType == CodeFragment.New.class)
+			return NEW_OPCODES;
 		throw new UnsupportedOperationException("No ASM implementation for " + interfaceType);
 	}
 
+	/**
+	 * @return a fragment wrapping the given instruction, or null if it isn't one of the fragment types with an ASM implementation
+	 */
+	@Nullable
+	static InstructionCodeFragment wrap(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+			case INVOKEVIRTUAL:
+			case INVOKESPECIAL:
+			case INVOKESTATIC:
+			case INVOKEINTERFACE:
+				return new MethodCall(containingMethodNodeInfo, (MethodInsnNode) insn);
+			case GETFIELD:
+			case GETSTATIC:
+				return new FieldLoad(containingMethodNodeInfo, (FieldInsnNode) insn);
+			case PUTFIELD:
+			case PUTSTATIC:
+				return new FieldStore(containingMethodNodeInfo, (FieldInsnNode) insn);
+			case IRETURN:
+			case LRETURN:
+			case FRETURN:
+			case DRETURN:
+			case ARETURN:
+			case RETURN:
+				return new Return(containingMethodNodeInfo, (InsnNode) insn);
+			case NEW:
+				return new New(containingMethodNodeInfo, (TypeInsnNode) insn);
+			default:
+				return null;
+		}
+	}
+
+	private static Type ownerType(String owner) {
+		return Type.ofDescriptor(owner.charAt(0) == '[' ? owner : 'L' + owner + ';');
+	}
+
 	private static boolean ivEqualIgnoringStackOffset(IntermediateValue t, IntermediateValue t1) {
 		return t.type.equals(t1.type) && t.location.type.equals(t1.location.type);
 	}
@@ -174,7 +234,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 						if (type == null)
 							type = CombinedValue.OBJECT_TYPE;
 
-						results.add(new IntermediateValue(new Type(type.getDescriptor()), IntermediateValue.UNKNOWN, new IntermediateValue.Location(LOCAL, i, null)));
+						results.add(new IntermediateValue(Type.ofDescriptor(type.getDescriptor()), IntermediateValue.UNKNOWN, new IntermediateValue.Location(LOCAL, i, null)));
 					}
 
 				// node.visibleLocalVariableAnnotations;
@@ -208,7 +268,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 						continue;
 
 					assert stackValue.getType() != null;
-					results.add(new IntermediateValue(new Type(stackValue.getType().getDescriptor()), stackValue.getConstantValue(), new IntermediateValue.Location(STACK, i, null)));
+					results.add(new IntermediateValue(Type.ofDescriptor(stackValue.getType().getDescriptor()), stackValue.getConstantValue(), new IntermediateValue.Location(STACK, i, null)));
 				}
 			}
 
@@ -219,8 +279,22 @@ class AsmCodeFragmentGenerator implements Opcodes {
 
 		@Override
 		public void insert(@NonNull CodeFragment fragmentOfAnyType, @NonNull InsertionPosition position, @NonNull InsertionOptions insertionOptions) {
-			if (CodeFragmentUtil.validateInsert(this, fragmentOfAnyType, position, insertionOptions)) {
+			val insertion = prepareInsertion(fragmentOfAnyType, position, insertionOptions);
+			if (insertion == null)
 				return;
+			insertion.apply();
+			containingMethodNodeInfo.markCodeDirty(insertion.unchangedInstructions);
+		}
+
+		/**
+		 * Checks an insertion and prepares the instructions to insert, without changing this fragment's method's instructions
+		 *
+		 * @return the insertion, or null if it would have no effect
+		 */
+		@Nullable
+		Insertion prepareInsertion(@NonNull CodeFragment fragmentOfAnyType, @NonNull InsertionPosition position, @NonNull InsertionOptions insertionOptions) {
+			if (CodeFragmentUtil.validateInsert(this, fragmentOfAnyType, position, insertionOptions)) {
+				return null;
 			}
 
 			if (!(fragmentOfAnyType instanceof AsmCodeFragment))
@@ -240,6 +314,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 				throw new UnreachableInsertionException(this, InsertionPosition.AFTER);
 
 			InsnList insertInstructions;
+			int maxLocals;
 			{
 				insertInstructions = Cloner.clone(fragment.containingMethodNodeInfo.node.instructions, fragment.getFirstInstruction(), fragment.getLastInstruction());
 				val clonedMethod = Cloner.deepClone(fragment.containingMethodNodeInfo.node);
@@ -251,7 +326,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 				DebugPrinter.printByteCode(clonedMethod, "base");
 				applyInsertionOptions((MethodNodeInfoCodeFragment) fragment, insertionOptions);
 				DebugPrinter.printByteCode(clonedMethod, "insertionOptions");
-				convertTypes((MethodNodeInfoCodeFragment) fragment, position);
+				maxLocals = convertTypes((MethodNodeInfoCodeFragment) fragment, position);
 				DebugPrinter.printByteCode(clonedMethod, "convertedTypes");
 			}
 
@@ -262,32 +337,25 @@ class AsmCodeFragmentGenerator implements Opcodes {
 
 			switch (position) {
 				case BEFORE:
-					containingList.insertBefore(first, insertInstructions);
-					break;
 				case OVERWRITE:
-					containingList.insertBefore(first, insertInstructions);
-					AbstractInsnNode current = first;
-					while (true) {
-						val next = current.getNext();
-						containingList.remove(current);
-						if (current == last)
-							break;
-						current = next;
-					}
 					break;
 				case AFTER:
 					val insertedExecutionResult = fragment.getExecutionOutcome();
 					if (!executionResult.canFallThrough && insertedExecutionResult.canFallThrough)
 						throw new UnreachableInsertionException(this, InsertionPosition.AFTER);
-					containingList.insert(last, insertInstructions);
 					break;
 				default:
 					throw new UnsupportedOperationException("TODO: not yet implemented for " + getClass() + ' ' + fragment.getClass() + ' ' + position + " from " + startIndex + " to " + endIndex);
 			}
-			containingMethodNodeInfo.markCodeDirty();
+			return new Insertion(containingMethodNode, first, last, startIndex, endIndex, insertInstructions, position, maxLocals);
 		}
 
-		private void convertTypes(MethodNodeInfoCodeFragment insertFragment, InsertionPosition position) {
+		/**
+		 * Converts the fragment to insert to use this fragment's values, without changing this fragment's method
+		 *
+		 * @return the number of locals this fragment's method needs once the fragment is inserted
+		 */
+		private int convertTypes(MethodNodeInfoCodeFragment insertFragment, InsertionPosition position) {
 			List<IntermediateValue> existingInputTypes;
 			List<IntermediateValue> existingOutputTypes;
 			switch (position) {
@@ -302,14 +370,14 @@ class AsmCodeFragmentGenerator implements Opcodes {
 					existingOutputTypes = existingInputTypes = getOutputTypes();
 					break;
 				default:
-					return;
+					return containingMethodNodeInfo.node.maxLocals;
 			}
 
 			val inputTypes = insertFragment.getInputTypes();
 			val outputTypes = insertFragment.getOutputTypes();
 
 			if (CollectionUtil.equals(inputTypes, outputTypes, AsmCodeFragmentGenerator::ivEqualIgnoringStackOffset))
-				return;
+				return containingMethodNodeInfo.node.maxLocals;
 
 			val node = insertFragment.containingMethodNodeInfo.node;
 			val insns = node.instructions;
@@ -332,8 +400,9 @@ class AsmCodeFragmentGenerator implements Opcodes {
 					System.out.println("added local " + localIndex + " for " + iv);
 					localIndex++;
 				}
-				containingMethodNodeInfo.node.maxLocals = localIndex;
 			}
+			// only applied to this fragment's method with the insertion, so an insertion which is never applied doesn't change it
+			val maxLocals = localIndex;
 
 			// at this point, the existing input types are all local variables
 
@@ -363,7 +432,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 				}
 			}
 
-			rebaseLocals(locals, insertFragment, containingMethodNodeInfo.node.maxLocals);
+			rebaseLocals(locals, insertFragment, maxLocals);
 			insns.insert(varInsns);
 
 			// insns.insert(lastVarAdded);
@@ -378,6 +447,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 				}
 
 			insertFragment.containingMethodNodeInfo.markCodeDirty();
+			return maxLocals;
 		}
 
 		private void applyInsertionOptions(MethodNodeInfoCodeFragment fragment, InsertionOptions options) {
@@ -479,14 +549,12 @@ class AsmCodeFragmentGenerator implements Opcodes {
 		}
 
 		@Override
-		@SuppressWarnings({"JavaReflectionMemberAccess", "unchecked"})
-		@SneakyThrows
+		@SuppressWarnings("unchecked")
 		public <T extends CodeFragment> List<T> findFragments(Class<T> fragmentType) {
 			if (fragmentType.isInstance(this))
 				return Collections.singletonList((T) this);
 
-			val constructor = (Constructor<T>) concreteImplementation(fragmentType).getDeclaredConstructors()[0];
-
+			val opcodes = opcodes(fragmentType);
 			val result = new ArrayList<T>();
 			AbstractInsnNode insn = getFirstInstruction();
 
@@ -497,8 +565,13 @@ class AsmCodeFragmentGenerator implements Opcodes {
 
 			val last = getLastInstruction();
 			while (true) {
-				if (constructor.getParameterTypes()[1].isAssignableFrom(insn.getClass()))
-					result.add(constructor.newInstance(containingMethodNodeInfo, insn));
+				for (val opcode : opcodes)
+					if (insn.getOpcode() == opcode) {
+						val fragment = getFragment(insn);
+						if (fragmentType.isInstance(fragment))
+							result.add((T) fragment);
+						break;
+					}
 				if (insn == last)
 					break;
 				insn = insn.getNext();
@@ -506,6 +579,85 @@ class AsmCodeFragmentGenerator implements Opcodes {
 
 			return result;
 		}
+
+		/**
+		 * @return the fragment wrapping the given instruction in this fragment's method, shared with other lookups until the method changes
+		 */
+		@Nullable
+		CodeFragment getFragment(AbstractInsnNode insn) {
+			val index = containingMethodNodeInfo.getInstructionIndex();
+			CodeFragment fragment = index.getFragment(insn, CodeFragment.class);
+			if (fragment == null) {
+				fragment = wrap(containingMethodNodeInfo, insn);
+				if (fragment != null)
+					index.putFragment(insn, fragment);
+			}
+			return fragment;
+		}
+	}
+
+	/**
+	 * Prepared instructions to insert relative to a fragment, which can be applied after other insertions into the same method
+	 */
+	static final class Insertion {
+		private final MethodNode containingMethod;
+		private final InsnList containingList;
+		private final AbstractInsnNode first;
+		private final AbstractInsnNode last;
+		private final int startIndex;
+		private final int endIndex;
+		private final InsnList insertInstructions;
+		private final CodeFragment.InsertionPosition position;
+		private final int maxLocals;
+		/**
+		 * Number of instructions at the start of the method which this insertion doesn't change
+		 */
+		final int unchangedInstructions;
+
+		Insertion(MethodNode containingMethod, AbstractInsnNode first, AbstractInsnNode last, int startIndex, int endIndex, InsnList insertInstructions, CodeFragment.InsertionPosition position, int maxLocals) {
+			this.containingMethod = containingMethod;
+			this.containingList = containingMethod.instructions;
+			this.first = first;
+			this.last = last;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+			this.insertInstructions = insertInstructions;
+			this.position = position;
+			this.maxLocals = maxLocals;
+			unchangedInstructions = position == CodeFragment.InsertionPosition.AFTER ? endIndex + 1 : startIndex;
+		}
+
+		boolean overlaps(Insertion other) {
+			if (position != CodeFragment.InsertionPosition.OVERWRITE && other.position != CodeFragment.InsertionPosition.OVERWRITE)
+				return false;
+			return startIndex <= other.endIndex && other.startIndex <= endIndex;
+		}
+
+		void apply() {
+			// insertions in a batch can each need more locals, and reuse the same ones as they don't overlap
+			containingMethod.maxLocals = Math.max(containingMethod.maxLocals, maxLocals);
+			switch (position) {
+				case BEFORE:
+					containingList.insertBefore(first, insertInstructions);
+					break;
+				case OVERWRITE:
+					containingList.insertBefore(first, insertInstructions);
+					AbstractInsnNode current = first;
+					while (true) {
+						val next = current.getNext();
+						containingList.remove(current);
+						if (current == last)
+							break;
+						current = next;
+					}
+					break;
+				case AFTER:
+					containingList.insert(last, insertInstructions);
+					break;
+				default:
+					throw new UnsupportedOperationException(position.toString());
+			}
+		}
 	}
 
 	abstract static class InstructionCodeFragment extends AsmCodeFragment {
@@ -552,6 +704,71 @@ class AsmCodeFragmentGenerator implements Opcodes {
 			return containingMethodNodeInfo.node.instructions.getFirst();
 		}
 
+		/**
+		 * Prepares every insertion against the current analysis of this method, then splices them all in and marks the code dirty once
+		 */
+		@Override
+		public void edit(@NonNull Consumer<Batch> edits) {
+			val insertions = new ArrayList<Insertion>();
+			edits.accept((target, fragment, position, insertionOptions) -> {
+				if (!(target instanceof AsmCodeFragment) || ((AsmCodeFragment) target).containingMethodNodeInfo != containingMethodNodeInfo)
+					throw new TransformationException("Can't insert relative to '" + target + "' in a batch for " + this + ", as it's not part of the same method");
+				val insertion = ((AsmCodeFragment) target).prepareInsertion(fragment, position, insertionOptions);
+				if (insertion == null)
+					return;
+				for (val other : insertions)
+					if (insertion.overlaps(other))
+						throw new TransformationException("Can't overwrite code which another insertion in the same batch is relative to, at instructions " + insertion.startIndex + " to " + insertion.endIndex);
+				insertions.add(insertion);
+			});
+			if (insertions.isEmpty())
+				return;
+
+			int unchangedInstructions = Integer.MAX_VALUE;
+			for (val insertion : insertions) {
+				// several insertions after the same instruction each go directly after it, so these are applied in reverse to keep the batch's order
+				if (insertion.position != InsertionPosition.AFTER)
+					insertion.apply();
+				unchangedInstructions = Math.min(unchangedInstructions, insertion.unchangedInstructions);
+			}
+			for (int i = insertions.size() - 1; i >= 0; i--)
+				if (insertions.get(i).position == InsertionPosition.AFTER)
+					insertions.get(i).apply();
+			containingMethodNodeInfo.markCodeDirty(unchangedInstructions);
+		}
+
+		/**
+		 * Uses this method's instruction index, so only matching instructions are visited
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T extends CodeFragment> List<T> findFragments(Class<T> fragmentType) {
+			if (fragmentType.isInstance(this))
+				return Collections.singletonList((T) this);
+
+			val instructions = containingMethodNodeInfo.getInstructionIndex().get(opcodes(fragmentType));
+			val result = new ArrayList<T>(instructions.size());
+			for (val insn : instructions) {
+				val fragment = getFragment(insn);
+				if (fragmentType.isInstance(fragment))
+					result.add((T) fragment);
+			}
+			return result;
+		}
+
+		@Override
+		public List<CodeFragment.MethodCall> findMethodCalls(@Nullable Type owner, @Nullable String name, @Nullable String descriptor) {
+			val ownerName = owner == null ? null : owner.isClassType() ? owner.descriptor.substring(1, owner.descriptor.length() - 1) : owner.descriptor;
+			val index = containingMethodNodeInfo.getInstructionIndex();
+			val result = new ArrayList<CodeFragment.MethodCall>();
+			for (val insn : name == null ? index.get(METHOD_CALL_OPCODES) : index.getMethodCalls(name)) {
+				val call = (MethodInsnNode) insn;
+				if ((ownerName == null || ownerName.equals(call.owner)) && (descriptor == null || descriptor.equals(call.desc)))
+					result.add((CodeFragment.MethodCall) getFragment(call));
+			}
+			return result;
+		}
+
 		@NonNull
 		@Override
 		public AbstractInsnNode getLastInstruction() {
@@ -571,8 +788,7 @@ class AsmCodeFragmentGenerator implements Opcodes {
 		@NonNull
 		@Override
 		public Type getContainingClassType() {
-			val owner = instruction.owner;
-			return new Type(owner.charAt(0) == '[' ? owner : 'L' + owner + ';');
+			return ownerType(instruction.owner);
 		}
 
 		@NonNull
@@ -580,5 +796,65 @@ class AsmCodeFragmentGenerator implements Opcodes {
 		public String getName() {
 			return instruction.name;
 		}
+
+		@NonNull
+		@Override
+		public String getDescriptor() {
+			return instruction.desc;
+		}
+	}
+
+	@Getter
+	abstract static class FieldAccess extends InstructionCodeFragment implements CodeFragment.FieldAccess {
+		private final FieldInsnNode instruction;
+
+		FieldAccess(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, FieldInsnNode instruction) {
+			super(containingMethodNodeInfo);
+			this.instruction = instruction;
+		}
+
+		@NonNull
+		@Override
+		public Type getContainingClassType() {
+			return ownerType(instruction.owner);
+		}
+
+		@NonNull
+		@Override
+		public String getName() {
+			return instruction.name;
+		}
+	}
+
+	static class FieldLoad extends FieldAccess implements CodeFragment.FieldLoad {
+		public FieldLoad(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, FieldInsnNode instruction) {
+			super(containingMethodNodeInfo, instruction);
+		}
+	}
+
+	static class FieldStore extends FieldAccess implements CodeFragment.FieldStore {
+		public FieldStore(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, FieldInsnNode instruction) {
+			super(containingMethodNodeInfo, instruction);
+		}
+	}
+
+	@Getter
+	static class Return extends InstructionCodeFragment implements CodeFragment.Return {
+		private final InsnNode instruction;
+
+		public Return(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, InsnNode instruction) {
+			super(containingMethodNodeInfo);
+			this.instruction = instruction;
+		}
+	}
+
+	@Getter
+	static class New extends InstructionCodeFragment implements CodeFragment.New {
+		private final TypeInsnNode instruction;
+
+		public New(ByteCodeInfo.MethodNodeInfo containingMethodNodeInfo, TypeInsnNode instruction) {
+			super(containingMethodNodeInfo);
+			this.instruction = instruction;
+		}
 	}
 }
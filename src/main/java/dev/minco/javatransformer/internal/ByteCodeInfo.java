@@ -1,18 +1,28 @@
 package dev.minco.javatransformer.internal;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.SneakyThrows;
+import lombok.ToString;
 import lombok.val;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
@@ -36,6 +46,7 @@ import dev.minco.javatransformer.internal.util.AnnotationParser;
 import dev.minco.javatransformer.internal.util.CachingSupplier;
 import dev.minco.javatransformer.internal.util.Cloner;
 import dev.minco.javatransformer.internal.util.CollectionUtil;
+import dev.minco.javatransformer.internal.util.SoftCachingSupplier;
 
 @Data
 @SuppressWarnings("unchecked")
@@ -43,12 +54,92 @@ public class ByteCodeInfo implements ClassInfo {
 	private final Supplier<ClassNode> node;
 	@Getter(lazy = true)
 	private final List<Annotation> annotations = getAnnotationsInternal();
+	/**
+	 * Must be set after changing the control flow of a method directly, so frames are computed when this class is written.
+	 * Setting it also marks this class as {@link #isModified() modified}.
+	 */
 	public boolean hasChangedMethodControlFlow;
+	/**
+	 * Set when this class has been changed and needs to be written again.
+	 * Not part of equality, as it is set by {@link #getNode()}, and can't be cleared so changes are never dropped.
+	 */
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	private boolean modified;
+	/**
+	 * Set once the class node has been handed out, after which any method may have been changed directly
+	 */
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	private boolean nodeExposed;
+	// methods which have had a MethodNodeInfo, whose node may have been changed directly
+	// weak, as MethodNode doesn't override equals, and classpath classes may drop their nodes
+	@Getter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private final Set<MethodNode> exposedMethods = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+	// held strongly, so wrappers and their state last as long as this class, unless the node can be dropped
+	@Nullable
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private volatile Members members;
+	// for nodes from a SoftCachingSupplier, which would otherwise be kept alive by their members
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private volatile SoftReference<Members> softMembers = new SoftReference<>(null);
+	/**
+	 * For classes read without their code, the same class read in full, which is only read once a method's code is needed
+	 */
+	@Nullable
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private Supplier<ByteCodeInfo> withCode;
 	@NonNull
 	private String className;
 	@NonNull
 	private Map<String, String> filters;
 
+	/**
+	 * @param stub node read without method code, which is enough to resolve types against this class
+	 * @param full node read in full, which is used instead for methods whose code is needed
+	 */
+	static ByteCodeInfo ofStub(Supplier<ClassNode> stub, Supplier<ClassNode> full, String className) {
+		val classInfo = new ByteCodeInfo(stub, className, Collections.emptyMap());
+		classInfo.withCode = SoftCachingSupplier.of(() -> new ByteCodeInfo(CachingSupplier.of(full), className, Collections.emptyMap()));
+		return classInfo;
+	}
+
+	/**
+	 * The node can be changed directly, so this marks this class as {@link #isModified() modified}
+	 */
+	public Supplier<ClassNode> getNode() {
+		modified = true;
+		nodeExposed = true;
+		return node;
+	}
+
+	/**
+	 * @return whether this class may have been changed, and needs to be written again
+	 */
+	public boolean isModified() {
+		return modified || hasChangedMethodControlFlow;
+	}
+
+	/**
+	 * Must be called after changing a node of this class directly, other than through {@link #getNode()},
+	 * such as through {@link MethodNodeInfo#node}, so that the change is written
+	 */
+	public void markModified() {
+		modified = true;
+	}
+
 	@Override
 	public String getName() {
 		return className;
@@ -56,8 +147,12 @@ public class ByteCodeInfo implements ClassInfo {
 
 	@Override
 	public void setName(String name) {
+		val internalName = name.replace('.', '/');
 		className = name;
-		node.get().name = name.replace('.', '/');
+		if (!internalName.equals(node.get().name)) {
+			node.get().name = internalName;
+			modified = true;
+		}
 	}
 
 	@Override
@@ -67,14 +162,17 @@ public class ByteCodeInfo implements ClassInfo {
 
 	@Override
 	public void setAccessFlags(AccessFlags accessFlags) {
-		node.get().access = accessFlags.access;
+		if (node.get().access != accessFlags.access) {
+			node.get().access = accessFlags.access;
+			modified = true;
+		}
 	}
 
 	public void add(MethodInfo method) {
 		MethodNode node;
 		if (method instanceof MethodNodeInfo) {
 			val orig = ((MethodNodeInfo) method);
-			node = Cloner.clone(orig.node);
+			node = Cloner.clone(orig.withCode().node);
 			FilteringClassWriter.addFilter(filters, orig.getClassInfo().getName(), getName());
 		} else {
 			node = new MethodNode();
@@ -84,6 +182,8 @@ public class ByteCodeInfo implements ClassInfo {
 			info.setAll(method);
 		}
 		this.node.get().methods.add(node);
+		members().methodIndex.add(node);
+		modified = true;
 	}
 
 	public void add(FieldInfo field) {
@@ -96,6 +196,8 @@ public class ByteCodeInfo implements ClassInfo {
 			nodeInfo.setAll(field);
 		}
 		this.node.get().fields.add(node);
+		members().fieldIndex.add(node);
+		modified = true;
 	}
 
 	@Override
@@ -106,6 +208,10 @@ public class ByteCodeInfo implements ClassInfo {
 			throw new TransformationException("Method " + method + " can not be removed as it is not present");
 
 		node.get().methods.remove(methodNodeInfo.node);
+		val members = members();
+		members.methods.remove(methodNodeInfo.node);
+		members.methodIndex.remove(methodNodeInfo.node);
+		modified = true;
 	}
 
 	@Override
@@ -116,6 +222,10 @@ public class ByteCodeInfo implements ClassInfo {
 			throw new TransformationException("Field " + field + " can not be removed as it is not present");
 
 		node.get().fields.remove(fieldNodeInfo.node);
+		val members = members();
+		members.fields.remove(fieldNodeInfo.node);
+		members.fieldIndex.remove(fieldNodeInfo.node);
+		modified = true;
 	}
 
 	@Override
@@ -124,20 +234,72 @@ public class ByteCodeInfo implements ClassInfo {
 		if (superName == null) {
 			return null;
 		}
-		return new Type("L" + superName + ";");
+		return Type.ofDescriptor("L" + superName + ";");
 	}
 
 	@Override
 	public List<Type> getInterfaceTypes() {
-		return node.get().interfaces.stream().map((it) -> new Type("L" + it + ";")).collect(Collectors.toList());
+		return node.get().interfaces.stream().map((it) -> Type.ofDescriptor("L" + it + ";")).collect(Collectors.toList());
 	}
 
 	public Stream<MethodInfo> getMethods() {
-		return node.get().methods.stream().map(MethodNodeInfo::new);
+		val members = members();
+		return members.node.methods.stream().map(members::get);
 	}
 
 	public Stream<FieldInfo> getFields() {
-		return node.get().fields.stream().map(FieldNodeInfo::new);
+		val members = members();
+		return members.node.fields.stream().map(members::get);
+	}
+
+	@Nullable
+	@Override
+	public MethodInfo get(MethodInfo like) {
+		val members = members();
+		// once the node has been handed out its methods may have been changed in ways the index can't notice
+		for (MethodNode method : nodeExposed ? members.node.methods : members.methodIndex.get(like.getName())) {
+			val methodInfo = members.get(method);
+			if (like.similar(methodInfo))
+				return methodInfo;
+		}
+		return null;
+	}
+
+	@Nullable
+	@Override
+	public FieldInfo get(FieldInfo like) {
+		val members = members();
+		for (FieldNode field : nodeExposed ? members.node.fields : members.fieldIndex.get(like.getName())) {
+			val fieldInfo = members.get(field);
+			if (like.similar(fieldInfo))
+				return fieldInfo;
+		}
+		return null;
+	}
+
+	private Members members() {
+		val node = this.node.get();
+		Members members = cachedMembers();
+		if (members != null && members.node == node)
+			return members;
+
+		synchronized (this) {
+			members = cachedMembers();
+			if (members == null || members.node != node) {
+				members = new Members(node);
+				if (this.node instanceof SoftCachingSupplier)
+					softMembers = new SoftReference<>(members);
+				else
+					this.members = members;
+			}
+			return members;
+		}
+	}
+
+	@Nullable
+	private Members cachedMembers() {
+		val members = this.members;
+		return members != null ? members : softMembers.get();
 	}
 
 	private List<Annotation> getAnnotationsInternal() {
@@ -152,6 +314,14 @@ public class ByteCodeInfo implements ClassInfo {
 		return stream.collect(Collectors.toList());
 	}
 
+	/**
+	 * @return false only if the given method can't have been changed, as neither it nor the class node were ever handed out
+	 */
+	public boolean isMethodModified(MethodNode method) {
+		return nodeExposed || exposedMethods.contains(method);
+	}
+
+	// not cached, as the node may not be in this class
 	MethodNodeInfo wrap(MethodNode node) {
 		return new MethodNodeInfo(node);
 	}
@@ -170,13 +340,43 @@ public class ByteCodeInfo implements ClassInfo {
 		throw new UnsupportedOperationException(); // TODO
 	}
 
+	/**
+	 * Wrappers for the members of one {@link ClassNode}, so each keeps its cached descriptor, code fragment and frames between lookups,
+	 * and an index of them by name
+	 *
+	 * Holds its node, so is only held softly when the node comes from a {@link SoftCachingSupplier}, and is then dropped along with the node
+	 * instead of keeping it alive
+	 */
+	private final class Members {
+		final ClassNode node;
+		// classpath classes are shared between threads
+		final Map<MethodNode, MethodNodeInfo> methods = Collections.synchronizedMap(new IdentityHashMap<>());
+		final Map<FieldNode, FieldNodeInfo> fields = Collections.synchronizedMap(new IdentityHashMap<>());
+		final MemberIndex<MethodNode> methodIndex;
+		final MemberIndex<FieldNode> fieldIndex;
+
+		Members(ClassNode node) {
+			this.node = node;
+			methodIndex = new MemberIndex<>(() -> node.methods, it -> it.name);
+			fieldIndex = new MemberIndex<>(() -> node.fields, it -> it.name);
+		}
+
+		MethodNodeInfo get(MethodNode method) {
+			return methods.computeIfAbsent(method, MethodNodeInfo::new);
+		}
+
+		FieldNodeInfo get(FieldNode field) {
+			return fields.computeIfAbsent(field, FieldNodeInfo::new);
+		}
+	}
+
 	public class FieldNodeInfo implements FieldInfo {
 		final FieldNode node;
 		private Type type;
 
 		FieldNodeInfo(FieldNode node) {
 			this.node = node;
-			type = new Type(node.desc, node.signature);
+			type = Type.ofDescriptor(node.desc, node.signature);
 		}
 
 		@Override
@@ -186,7 +386,12 @@ public class ByteCodeInfo implements ClassInfo {
 
 		@Override
 		public void setName(String name) {
-			node.name = name;
+			if (!name.equals(node.name)) {
+				val oldName = node.name;
+				node.name = name;
+				members().fieldIndex.rename(node, oldName);
+				modified = true;
+			}
 		}
 
 		@Override
@@ -196,7 +401,10 @@ public class ByteCodeInfo implements ClassInfo {
 
 		@Override
 		public void setAccessFlags(AccessFlags accessFlags) {
-			node.access = accessFlags.access;
+			if (node.access != accessFlags.access) {
+				node.access = accessFlags.access;
+				modified = true;
+			}
 		}
 
 		@Override
@@ -209,6 +417,7 @@ public class ByteCodeInfo implements ClassInfo {
 			this.type = type;
 			node.desc = type.descriptor;
 			node.signature = type.signature;
+			modified = true;
 		}
 
 		@Override
@@ -234,13 +443,23 @@ public class ByteCodeInfo implements ClassInfo {
 	}
 
 	public class MethodNodeInfo implements MethodInfo {
+		/**
+		 * Changes made directly to this node must be followed by {@link #markCodeDirty()} if they change its instructions,
+		 * otherwise by {@link #markModified()}
+		 */
 		public final MethodNode node;
-		private final CachingSupplier<Frame<CombinedValue>[]> stackFrames;
+		private final CachingSupplier<CombinedAnalyzer.Analysis<CombinedValue>> analysis;
+		// kept after the code changes, so the next analysis can reuse its frames for instructions before the change
+		@Nullable
+		private CombinedAnalyzer.Analysis<CombinedValue> staleAnalysis;
+		private int unchangedInstructions;
 		private final CachingSupplier<MethodDescriptor> descriptor;
 		private final CachingSupplier<CodeFragment.Body> codeFragment;
+		private final CachingSupplier<InstructionIndex> instructionIndex;
 
 		MethodNodeInfo(MethodNode node) {
 			this.node = node;
+			exposedMethods.add(node);
 			descriptor = CachingSupplier.of(() -> {
 				try {
 					return new MethodDescriptor(node);
@@ -252,7 +471,8 @@ public class ByteCodeInfo implements ClassInfo {
 				}
 			});
 			codeFragment = CachingSupplier.of(() -> new AsmCodeFragmentGenerator.MethodNodeInfoCodeFragment(this));
-			stackFrames = CachingSupplier.of(this::analyzeStackFrames);
+			analysis = CachingSupplier.of(this::analyzeStackFrames);
+			instructionIndex = CachingSupplier.of(() -> new InstructionIndex(node.instructions));
 		}
 
 		@Override
@@ -262,7 +482,10 @@ public class ByteCodeInfo implements ClassInfo {
 
 		@Override
 		public void setAccessFlags(AccessFlags accessFlags) {
-			node.access = accessFlags.access;
+			if (node.access != accessFlags.access) {
+				node.access = accessFlags.access;
+				markModified();
+			}
 		}
 
 		@Override
@@ -272,7 +495,12 @@ public class ByteCodeInfo implements ClassInfo {
 
 		@Override
 		public void setName(String name) {
-			node.name = name;
+			if (!name.equals(node.name)) {
+				val oldName = node.name;
+				node.name = name;
+				members().methodIndex.rename(node, oldName);
+				markModified();
+			}
 		}
 
 		@Override
@@ -284,6 +512,7 @@ public class ByteCodeInfo implements ClassInfo {
 		public void setReturnType(Type returnType) {
 			descriptor.set(descriptor.get().withReturnType(returnType));
 			descriptor.get().saveTo(node);
+			markModified();
 		}
 
 		@Override
@@ -295,6 +524,7 @@ public class ByteCodeInfo implements ClassInfo {
 		public void setParameters(List<Parameter> parameters) {
 			descriptor.set(descriptor.get().withParameters(parameters));
 			descriptor.get().saveTo(node);
+			markModified();
 		}
 
 		public String getDescriptor() {
@@ -325,31 +555,81 @@ public class ByteCodeInfo implements ClassInfo {
 		public void setTypeVariables(List<TypeVariable> typeVariables) {
 			descriptor.set(descriptor.get().withTypeVariables(typeVariables));
 			descriptor.get().saveTo(node);
+			markModified();
 		}
 
 		@Override
 		@SuppressWarnings("MethodDoesntCallSuperMethod")
 		public MethodInfo clone() {
-			return new MethodNodeInfo(Cloner.clone(node));
+			return new MethodNodeInfo(Cloner.clone(withCode().node));
 		}
 
 		@Override
 		public @NonNull CodeFragment.Body getCodeFragment() {
-			return codeFragment.get();
+			val withCode = withCode();
+			return withCode == this ? codeFragment.get() : withCode.getCodeFragment();
+		}
+
+		/**
+		 * @return the wrapper for this method in its class read in full, or this if its class wasn't read without code
+		 */
+		MethodNodeInfo withCode() {
+			val withCode = ByteCodeInfo.this.withCode;
+			if (withCode == null)
+				return this;
+			val full = withCode.get();
+			for (MethodNode method : full.node.get().methods)
+				if (method.name.equals(node.name) && method.desc.equals(node.desc))
+					return full.members().get(method);
+			throw new TransformationException("Method " + node.name + node.desc + " is missing from " + full.getName() + " when it's read with its code");
+		}
+
+		InstructionIndex getInstructionIndex() {
+			return instructionIndex.get();
 		}
 
 		public Frame<CombinedValue>[] getStackFrames() {
-			return stackFrames.get();
+			val withCode = withCode();
+			return withCode == this ? analysis.get().frames : withCode.getStackFrames();
 		}
 
 		@SneakyThrows
-		private Frame<CombinedValue>[] analyzeStackFrames() {
-			return CombinedAnalyzer.analyze(new CombinedInterpreter(), getClassInfo().getNode().get().name, node);
+		private CombinedAnalyzer.Analysis<CombinedValue> analyzeStackFrames() {
+			val previous = staleAnalysis;
+			staleAnalysis = null;
+			return CombinedAnalyzer.analyze(new CombinedInterpreter(node.instructions), ByteCodeInfo.this.node.get().name, node, previous, unchangedInstructions);
 		}
 
+		/**
+		 * Must be called after changing this method's instructions, as this wrapper is reused and keeps their analysis
+		 */
 		public void markCodeDirty() {
-			stackFrames.set(null);
+			markCodeDirty(0);
+		}
+
+		/**
+		 * Same as {@link #markCodeDirty()}, but lets the next analysis reuse the frames of instructions before the change
+		 *
+		 * @param unchangedInstructions number of instructions at the start of the method which weren't changed
+		 */
+		public void markCodeDirty(int unchangedInstructions) {
+			if (analysis.isCached()) {
+				staleAnalysis = analysis.get();
+				this.unchangedInstructions = unchangedInstructions;
+				analysis.set(null);
+			} else {
+				this.unchangedInstructions = Math.min(this.unchangedInstructions, unchangedInstructions);
+			}
+			instructionIndex.set(null);
 			hasChangedMethodControlFlow = true;
+			markModified();
+		}
+
+		/**
+		 * Must be called after changing this method's node directly, other than its instructions, so that the change is written
+		 */
+		public void markModified() {
+			modified = true;
 		}
 	}
 }
@@ -0,0 +1,341 @@
+package dev.minco.javatransformer.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+
+import dev.minco.javatransformer.api.AccessFlags;
+import dev.minco.javatransformer.api.Annotation;
+import dev.minco.javatransformer.api.ClassInfo;
+import dev.minco.javatransformer.api.FieldInfo;
+import dev.minco.javatransformer.api.MethodInfo;
+import dev.minco.javatransformer.api.Type;
+import dev.minco.javatransformer.api.TypeVariable;
+import dev.minco.javatransformer.internal.util.CachingSupplier;
+import dev.minco.javatransformer.internal.zip.ZipArchive;
+
+/**
+ * Index of the classes in a jar and their super types, so lookups don't need to open the jar or parse its classes
+ *
+ * Indexes are kept in the directory set by the {@value #DIRECTORY_PROPERTY} system property, and are only used if it is set.
+ * They are read through a memory mapping, so JVMs using the same index share its pages.
+ */
+final class ClassPathIndex {
+	static final String DIRECTORY_PROPERTY = "JavaTransformer.classPathIndexDirectory";
+	private static final int MAGIC = 0x4A544349;
+	private static final int VERSION = 1;
+	/**
+	 * magic, version, jar size, jar modification time, jar central directory checksum, class count
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+
+	private final ByteBuffer buffer;
+
+	private ClassPathIndex(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Nullable
+	static Path getDirectory() {
+		val directory = System.getProperty(DIRECTORY_PROPERTY);
+		return directory == null || directory.isEmpty() ? null : Paths.get(directory);
+	}
+
+	private static Path file(Path directory, Path jar) {
+		return directory.resolve(UUID.nameUUIDFromBytes(jar.toString().getBytes(StandardCharsets.UTF_8)) + ".index");
+	}
+
+	/**
+	 * @return the index for the given jar, or null if there is none or it is out of date
+	 */
+	@Nullable
+	static ClassPathIndex load(Path directory, Path jar) throws IOException {
+		val file = file(directory, jar);
+		if (!Files.isRegularFile(file))
+			return null;
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			return null;
+		if (buffer.getLong(8) != Files.size(jar) || buffer.getLong(16) != Files.getLastModifiedTime(jar).toMillis() || buffer.getLong(24) != ZipArchive.checksumCentralDirectory(jar))
+			return null;
+
+		return new ClassPathIndex(buffer);
+	}
+
+	/**
+	 * @param read reads an entry of the indexed jar, by name
+	 * @return ClassInfos which answer name, access flag and super type queries from this index, and only use read for other data
+	 */
+	List<ClassInfo> getClassInfos(Function<String, byte[]> read) {
+		val buffer = this.buffer.duplicate();
+		val count = buffer.getInt(HEADER_SIZE - 4);
+		val classInfos = new ArrayList<ClassInfo>(count);
+		buffer.position(HEADER_SIZE);
+		for (int i = 0; i < count; i++) {
+			val className = readString(buffer);
+			classInfos.add(new IndexedClassInfo(className, buffer.position(), read));
+			skipRecord(buffer);
+		}
+		return classInfos;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		val bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buffer) {
+		val length = buffer.getShort() & 0xFFFF;
+		buffer.position(buffer.position() + length);
+	}
+
+	private static void skipRecord(ByteBuffer buffer) {
+		skipString(buffer);
+		buffer.getInt();
+		skipString(buffer);
+		int interfaces = buffer.getShort() & 0xFFFF;
+		for (int i = 0; i < interfaces; i++)
+			skipString(buffer);
+	}
+
+	private Header readHeader(int position) {
+		val buffer = this.buffer.duplicate();
+		buffer.position(position);
+		val entryName = readString(buffer);
+		val access = buffer.getInt();
+		val superName = readString(buffer);
+		val interfaces = new String[buffer.getShort() & 0xFFFF];
+		for (int i = 0; i < interfaces.length; i++)
+			interfaces[i] = readString(buffer);
+		return new Header(entryName, access, superName.isEmpty() ? null : superName, interfaces);
+	}
+
+	@Data
+	private static final class Header {
+		final String entryName;
+		final int access;
+		@Nullable
+		final String superName;
+		final String[] interfaces;
+	}
+
+	/**
+	 * Collects the classes in a jar while it is scanned, and writes them to an index
+	 *
+	 * Classes may be added from several threads at once
+	 */
+	static final class Builder {
+		private final Path jar;
+		private final long size;
+		private final long lastModified;
+		private final long checksum;
+		private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(records);
+		private int count;
+		private volatile boolean failed;
+
+		// the jar is checked before scanning it, so an index never claims to be for a newer version than was scanned
+		Builder(Path jar) throws IOException {
+			this.jar = jar;
+			size = Files.size(jar);
+			lastModified = Files.getLastModifiedTime(jar).toMillis();
+			checksum = ZipArchive.checksumCentralDirectory(jar);
+		}
+
+		private void writeString(@Nullable String string) throws IOException {
+			val bytes = string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+		}
+
+		void add(String className, String entryName, byte[] data) throws IOException {
+			ClassReader reader;
+			try {
+				reader = new ClassReader(data);
+			} catch (RuntimeException e) {
+				// classes which can't be read are only a problem if they're used, so their jar is just left unindexed
+				failed = true;
+				return;
+			}
+			val superName = reader.getSuperName();
+			val interfaces = reader.getInterfaces();
+			synchronized (this) {
+				writeString(className);
+				writeString(entryName);
+				out.writeInt(reader.getAccess());
+				writeString(superName);
+				out.writeShort(interfaces.length);
+				for (String it : interfaces)
+					writeString(it);
+				count++;
+			}
+		}
+
+		synchronized void write(Path directory) throws IOException {
+			if (failed)
+				return;
+
+			val bytes = new ByteArrayOutputStream(HEADER_SIZE + records.size());
+			val header = new DataOutputStream(bytes);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeLong(size);
+			header.writeLong(lastModified);
+			header.writeLong(checksum);
+			header.writeInt(count);
+			records.writeTo(bytes);
+
+			val file = file(directory, jar);
+			Files.createDirectories(directory);
+			// written to a temporary file first so other JVMs never map a partially written index
+			val temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temp, bytes.toByteArray());
+				try {
+					Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	private final class IndexedClassInfo implements ClassInfo {
+		private final String className;
+		private final int position;
+		@Getter(lazy = true)
+		private final Header header = readHeader(position);
+		private final CachingSupplier<ClassInfo> full;
+		// set once the class is changed, after which the header is out of date and everything is read from the full class
+		private volatile boolean changed;
+
+		IndexedClassInfo(String className, int position, Function<String, byte[]> read) {
+			this.className = className;
+			this.position = position;
+			full = CachingSupplier.of(() -> ClassPaths.classInfo(className, () -> read.apply(getHeader().entryName)));
+		}
+
+		@Override
+		public String getName() {
+			return changed ? full.get().getName() : className;
+		}
+
+		@Override
+		public void setName(String name) {
+			changed().setName(name);
+		}
+
+		@Override
+		public AccessFlags getAccessFlags() {
+			return changed ? full.get().getAccessFlags() : new AccessFlags(getHeader().access);
+		}
+
+		@Override
+		public void setAccessFlags(AccessFlags accessFlags) {
+			changed().setAccessFlags(accessFlags);
+		}
+
+		private ClassInfo changed() {
+			val classInfo = full.get();
+			changed = true;
+			return classInfo;
+		}
+
+		@Nullable
+		@Override
+		public Type getSuperType() {
+			if (changed)
+				return full.get().getSuperType();
+			val superName = getHeader().superName;
+			return superName == null ? null : Type.ofDescriptor("L" + superName + ";");
+		}
+
+		@Override
+		public List<Type> getInterfaceTypes() {
+			if (changed)
+				return full.get().getInterfaceTypes();
+			return Stream.of(getHeader().interfaces).map((it) -> Type.ofDescriptor("L" + it + ";")).collect(Collectors.toList());
+		}
+
+		@Override
+		public void add(MethodInfo method) {
+			changed().add(method);
+		}
+
+		@Override
+		public void add(FieldInfo field) {
+			changed().add(field);
+		}
+
+		@Override
+		public void remove(MethodInfo method) {
+			changed().remove(method);
+		}
+
+		@Override
+		public void remove(FieldInfo field) {
+			changed().remove(field);
+		}
+
+		@Override
+		public Stream<MethodInfo> getMethods() {
+			return full.get().getMethods();
+		}
+
+		@Override
+		public Stream<FieldInfo> getFields() {
+			return full.get().getFields();
+		}
+
+		@Override
+		public List<Annotation> getAnnotations() {
+			return full.get().getAnnotations();
+		}
+
+		@Override
+		public List<TypeVariable> getTypeVariables() {
+			return full.get().getTypeVariables();
+		}
+
+		@Override
+		public void setTypeVariables(List<TypeVariable> typeVariables) {
+			changed().setTypeVariables(typeVariables);
+		}
+
+		@Override
+		public String toString() {
+			return "IndexedClassInfo: " + getName();
+		}
+	}
+}
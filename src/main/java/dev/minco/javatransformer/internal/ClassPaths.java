@@ -1,11 +1,14 @@
 package dev.minco.javatransformer.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -19,21 +22,38 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.zip.ZipFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.val;
 
 import org.jetbrains.annotations.NotNull;
 
 import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseStart;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Providers;
 import com.github.javaparser.ast.CompilationUnit;
 
 import dev.minco.javatransformer.api.ClassInfo;
@@ -43,8 +63,11 @@ import dev.minco.javatransformer.internal.javaparser.CompilationUnitInfo;
 import dev.minco.javatransformer.internal.util.CachingSupplier;
 import dev.minco.javatransformer.internal.util.CollectionUtil;
 import dev.minco.javatransformer.internal.util.JVMUtil;
+import dev.minco.javatransformer.internal.util.NodeUtil;
+import dev.minco.javatransformer.internal.util.ParallelUtil;
+import dev.minco.javatransformer.internal.util.SoftCachingSupplier;
 import dev.minco.javatransformer.internal.util.Splitter;
-import dev.minco.javatransformer.internal.util.StreamUtil;
+import dev.minco.javatransformer.internal.zip.ZipArchive;
 
 public final class ClassPaths {
 	public static ClassPath of(ClassPath systemClassPath, Path... paths) {
@@ -64,12 +87,29 @@ public final class ClassPaths {
 					.collect(Collectors.toList());
 				return new FileClassPath(null, paths);
 			} catch (UnsupportedOperationException ignored) {
-				val fs = FileSystems.getFileSystem(URI.create("jrt:/"));
-				return new FileClassPath(null, Collections.singletonList(fs.getPath("modules/java.base/")));
+				return new JrtClassPath(FileSystems.getFileSystem(URI.create("jrt:/")));
 			}
 		}
 	}
 
+	/**
+	 * Classpath entries only need to be able to resolve types, so hold a stub without code, which may be dropped
+	 * when memory is low and is read again from data if it is needed afterwards.
+	 * The class is read again in full if a method's code is needed, or a method is cloned.
+	 */
+	static ByteCodeInfo classInfo(String className, Supplier<byte[]> data) {
+		return ByteCodeInfo.ofStub(SoftCachingSupplier.of(() -> AsmUtil.getStubClassNode(data.get())), () -> AsmUtil.getClassNode(data.get(), null), className);
+	}
+
+	/**
+	 * @return a fingerprint of the files in the given classpath and its parents, which changes when any of them do,
+	 * or null if it can't be known as the classpath isn't one of these
+	 */
+	@Nullable
+	public static String fingerprint(ClassPath classPath) {
+		return classPath instanceof ClassPathSolver ? ((ClassPathSolver) classPath).getFingerprint() : null;
+	}
+
 	private static abstract class ClassPathSolver implements ClassPath {
 		@Nullable
 		final ClassPath parent;
@@ -81,30 +121,141 @@ public final class ClassPaths {
 		static Path normalise(Path path) {
 			return path.toAbsolutePath().normalize();
 		}
+
+		/**
+		 * @return a number which increases whenever lookups in this classpath or its parents could give a different result,
+		 * or -1 if that can't be known as a parent isn't a {@link ClassPathSolver}
+		 */
+		abstract int getVersion();
+
+		int getParentVersion() {
+			if (parent == null)
+				return 0;
+			return parent instanceof ClassPathSolver ? ((ClassPathSolver) parent).getVersion() : -1;
+		}
+
+		@Nullable
+		abstract String getFingerprint();
 	}
 
+	/**
+	 * Safe to share between threads. Each path is loaded by the first lookup which needs it, or by {@link #prefetch},
+	 * and lookups after that don't lock. Classes in later paths take precedence over those in earlier paths.
+	 *
+	 * Like javac's sourcepath, .java files are found by the class name their path implies, and are only parsed once
+	 * that class or one nested in it is looked up. Other top level classes in the same file are only found by {@link #iterator}.
+	 */
 	static class FileClassPath extends ClassPathSolver {
-		private final Map<String, ClassInfo> entries = new HashMap<>();
-		private final Collection<Path> paths;
-		private boolean initialised;
+		// paths and big jars are split into chunks of this many entries, which are loaded in parallel when prefetching
+		private static final int CHUNK_SIZE = 128;
+		private static final int LOOKUPS_LIMIT = 1 << 16;
+		private final List<Path> paths;
+		// classes in each path, completed once the path has been loaded
+		private final ConcurrentHashMap<Path, PathLoad> loadedPaths = new ConcurrentHashMap<>();
+		// jars entries are lazily read from, until closed
+		private final ConcurrentHashMap<Path, ZipArchive> archives = new ConcurrentHashMap<>();
+		// results of lookups through this classpath and its parents, including misses
+		private final ConcurrentHashMap<String, Lookup> lookups = new ConcurrentHashMap<>();
+		@Nullable
+		private volatile Fingerprint fingerprint;
+		private volatile int version;
 
 		public FileClassPath(@Nullable ClassPath parent, Collection<Path> paths) {
 			super(parent);
-			this.paths = paths;
+			this.paths = paths.stream().map(ClassPathSolver::normalise).collect(Collectors.toCollection(CopyOnWriteArrayList::new));
+		}
+
+		@Override
+		int getVersion() {
+			val parentVersion = getParentVersion();
+			return parentVersion == -1 ? -1 : parentVersion + version;
 		}
 
 		@Nullable
 		@Override
 		public ClassInfo getClassInfo(@Nonnull String className) {
 			Objects.requireNonNull(className);
+			val currentVersion = getVersion();
+			if (currentVersion == -1)
+				return findClassInfo(className);
+
+			val lookup = lookups.get(className);
+			if (lookup != null && lookup.version == currentVersion)
+				return lookup.classInfo;
+
+			// most lookups while resolving source types are misses, which would otherwise search every path in the chain again
+			val classInfo = findClassInfo(className);
+			// bounded by starting over, as names which are still looked up often are soon cached again
+			if (lookups.size() >= LOOKUPS_LIMIT)
+				lookups.clear();
+			lookups.put(className, new Lookup(currentVersion, classInfo));
+			return classInfo;
+		}
+
+		@Nullable
+		@Override
+		String getFingerprint() {
+			val currentVersion = getVersion();
+			if (currentVersion == -1)
+				return null;
+			val cached = fingerprint;
+			if (cached != null && cached.version == currentVersion)
+				return cached.value;
+
+			val builder = new StringBuilder();
+			if (parent != null) {
+				val parentFingerprint = fingerprint(parent);
+				if (parentFingerprint == null)
+					return null;
+				builder.append(parentFingerprint);
+			}
+			for (Path path : paths)
+				builder.append(path).append('\0').append(fingerprintPath(path)).append('\0');
+			val value = builder.toString();
+			fingerprint = new Fingerprint(currentVersion, value);
+			return value;
+		}
+
+		@SneakyThrows
+		private static String fingerprintPath(Path path) {
+			if (Files.isDirectory(path)) {
+				// summed, so it doesn't depend on the order files are found in
+				val sum = new long[1];
+				Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+						val crc = new CRC32();
+						crc.update((path.relativize(file) + "\0" + attrs.size() + '\0' + attrs.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8));
+						sum[0] += crc.getValue();
+						return super.visitFile(file, attrs);
+					}
+				});
+				return "dir:" + Long.toHexString(sum[0]);
+			}
+			if (!Files.isRegularFile(path))
+				return "missing";
+			try {
+				return "zip:" + Files.size(path) + ':' + Long.toHexString(ZipArchive.checksumCentralDirectory(path));
+			} catch (ZipException e) {
+				return "file:" + Files.size(path) + ':' + Files.getLastModifiedTime(path).toMillis();
+			}
+		}
+
+		@Nullable
+		private ClassInfo findClassInfo(String className) {
 			if (parent != null) {
 				val p = parent.getClassInfo(className);
 				if (p != null)
 					return p;
 			}
-			if (!initialised)
-				initialise();
-			return entries.get(className);
+			// searched backwards, as later paths take precedence
+			val it = paths.listIterator(paths.size());
+			while (it.hasPrevious()) {
+				val classInfo = getEntries(it.previous()).get(className);
+				if (classInfo != null)
+					return classInfo;
+			}
+			return null;
 		}
 
 		@Override
@@ -114,9 +265,8 @@ public final class ClassPaths {
 				return false;
 			}
 			paths.add(path);
-			if (initialised) {
-				loadPath(path);
-			}
+			version++;
+			lookups.clear();
 			return true;
 		}
 
@@ -129,89 +279,393 @@ public final class ClassPaths {
 		@NotNull
 		@Override
 		public Iterator<ClassInfo> iterator() {
-			initialise();
+			val entries = new LinkedHashMap<String, ClassInfo>();
+			// sources which haven't been looked up yet are parsed here, as the classes they declare can't be known otherwise
+			for (Path path : paths)
+				getEntries(path).forEach(entries::put);
 			if (parent == null) {
 				return entries.values().iterator();
 			}
 			return CollectionUtil.union(parent, entries.values());
 		}
 
+		@Override
+		public CompletableFuture<Void> prefetch(Executor executor) {
+			val futures = new ArrayList<CompletableFuture<?>>();
+			if (parent != null)
+				futures.add(parent.prefetch(executor));
+			for (Path path : paths)
+				futures.add(load(path, executor));
+			return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+		}
+
+		/**
+		 * Loads the given path if no other thread has started to, otherwise waits for the thread loading it
+		 */
 		@SneakyThrows
-		private void findPaths(String entryName, Supplier<InputStream> iss) {
-			if (entryName.endsWith(".java"))
-				try (val is = iss.get()) {
-					findJavaPaths(is);
+		private PathEntries getEntries(Path path) {
+			val load = load(path, null);
+			// a load prefetch queued may not have started, and waiting for it could deadlock a busy executor
+			load.run();
+			try {
+				return load.join();
+			} catch (CompletionException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Starts loading the given path on the executor, or returns an unstarted load if it is null, unless it is already loading
+		 */
+		private PathLoad load(Path path, @Nullable Executor executor) {
+			val loaded = loadedPaths.get(path);
+			if (loaded != null)
+				return loaded;
+			val loading = new PathLoad(path, executor);
+			val existing = loadedPaths.putIfAbsent(path, loading);
+			if (existing != null)
+				return existing;
+
+			if (executor != null) {
+				try {
+					executor.execute(loading);
+				} catch (RejectedExecutionException e) {
+					loading.reject(e);
 				}
+			}
+			return loading;
+		}
+
+		private void findPaths(PathEntries entries, String entryName, Supplier<byte[]> data) {
+			if (entryName.endsWith(".java"))
+				// each file has its own lock, so files which are looked up at the same time are parsed in parallel
+				entries.sources.put(JVMUtil.fileNameToClassName(entryName), CachingSupplier.of(() -> parseSource(data)));
 
 			if (entryName.endsWith(".class")) {
 				String name = JVMUtil.fileNameToClassName(entryName);
-				entries.put(name, new ByteCodeInfo(CachingSupplier.of(() -> AsmUtil.getClassNode(StreamUtil.readFully(iss.get()), null)), name, Collections.emptyMap()));
+				entries.classes.put(name, classInfo(name, data));
 			}
 		}
 
-		private void findJavaPaths(InputStream is) {
-			val parsed = JavaParser.parse(is);
-			findJavaPaths(parsed);
-		}
+		// resolution only needs declarations, so bodies are dropped and the file is only parsed in full if something needs them
+		private Map<String, ClassInfo> parseSource(Supplier<byte[]> data) {
+			// without tokens, as every node would otherwise keep all of the file's tokens reachable
+			val stub = parse(data.get(), new ParserConfiguration().setStoreTokens(false));
+			NodeUtil.stripBodies(stub);
+			val full = CachingSupplier.of(() -> parse(data.get(), new ParserConfiguration()));
 
-		private void findJavaPaths(CompilationUnit compilationUnit) {
-			for (ClassInfo classInfo : CompilationUnitInfo.getSourceInfos(compilationUnit, this))
-				entries.put(classInfo.getName(), classInfo);
+			val classInfos = new HashMap<String, ClassInfo>();
+			for (ClassInfo classInfo : CompilationUnitInfo.getSourceInfos(stub, this, full))
+				classInfos.put(classInfo.getName(), classInfo);
+			return classInfos;
 		}
 
-		private synchronized void initialise() {
-			if (!initialised) {
-				for (Path path : paths)
-					loadPath(path);
-				initialised = true;
-			}
+		private static CompilationUnit parse(byte[] data, ParserConfiguration configuration) {
+			val result = new JavaParser(configuration).parse(ParseStart.COMPILATION_UNIT, Providers.provider(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+			if (!result.isSuccessful())
+				throw new ParseProblemException(result.getProblems());
+			return result.getResult().get();
 		}
 
 		@SneakyThrows
-		private void loadPath(Path path) {
-			if (Files.isDirectory(path))
+		private PathEntries loadPath(Path path, @Nullable Executor executor) {
+			val entries = new PathEntries();
+			if (Files.isDirectory(path)) {
+				val files = new ArrayList<Path>();
 				Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-					@SneakyThrows
 					@Override
 					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-						val entryName = path.relativize(file).toString().replace(File.separatorChar, '/');
-						findPaths(entryName, () -> {
-							try {
-								return Files.newInputStream(file);
-							} catch (IOException e) {
-								throw new IOError(e);
-							}
-						});
+						files.add(file);
 						return super.visitFile(file, attrs);
 					}
 				});
-			else if (Files.isRegularFile(path))
-				try (val zf = new ZipFile(path.toFile())) {
-					val e$ = zf.entries();
-					while (e$.hasMoreElements()) {
-						val ze = e$.nextElement();
-						val name = ze.getName();
-						findPaths(name, () -> {
+				for (PathEntries found : ParallelUtil.mapChunks(files, CHUNK_SIZE, executor, chunk -> {
+					val chunkEntries = new PathEntries();
+					for (Path file : chunk) {
+						val entryName = path.relativize(file).toString().replace(File.separatorChar, '/');
+						findPaths(chunkEntries, entryName, () -> {
 							try {
-								val zff = new ZipFile(path.toFile());
-								return zff.getInputStream(zff.getEntry(name));
+								return Files.readAllBytes(file);
 							} catch (IOException e) {
 								throw new IOError(e);
 							}
 						});
 					}
+					return chunkEntries;
+				}))
+					entries.addAll(found);
+			} else if (Files.isRegularFile(path)) {
+				loadJar(entries, normalise(path), executor);
+			}
+			return entries;
+		}
+
+		private void loadJar(PathEntries entries, Path jar, @Nullable Executor executor) throws IOException {
+			val indexDirectory = ClassPathIndex.getDirectory();
+			if (indexDirectory != null) {
+				val index = ClassPathIndex.load(indexDirectory, jar);
+				if (index != null) {
+					// the jar is only opened once something needs more than the index has
+					for (ClassInfo classInfo : index.getClassInfos(entryName -> read(jar, entryName)))
+						entries.classes.put(classInfo.getName(), classInfo);
+					return;
+				}
+			}
+
+			val builder = indexDirectory == null ? null : new ClassPathIndex.Builder(jar);
+			val archive = archive(jar);
+			// an index only lists classes, so jars with sources are always scanned
+			val hasSources = archive.getEntries().stream().anyMatch(it -> it.name.endsWith(".java"));
+			for (PathEntries found : ParallelUtil.mapChunks(archive.getEntries(), CHUNK_SIZE, executor, chunk -> {
+				val chunkEntries = new PathEntries();
+				for (ZipArchive.Entry entry : chunk) {
+					val data = archive.supplier(entry);
+					findPaths(chunkEntries, entry.name, data);
+					if (builder != null && !hasSources && entry.name.endsWith(".class"))
+						addToIndex(builder, entry.name, data);
 				}
+				return chunkEntries;
+			}))
+				entries.addAll(found);
+			if (builder != null && !hasSources)
+				builder.write(indexDirectory);
+		}
+
+		private static void addToIndex(ClassPathIndex.Builder builder, String entryName, Supplier<byte[]> data) {
+			try {
+				builder.add(JVMUtil.fileNameToClassName(entryName), entryName, data.get());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private ZipArchive archive(Path jar) {
+			// shared, so every classpath containing this jar reads it through one file handle
+			return archives.computeIfAbsent(jar, it -> {
+				try {
+					return ZipArchive.openShared(it);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+
+		private byte[] read(Path jar, String entryName) {
+			try {
+				val archive = archive(jar);
+				val entry = archive.getEntry(entryName);
+				if (entry == null)
+					throw new ZipException("Indexed entry " + entryName + " is missing from " + jar);
+				return archive.read(entry);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Must not be called while other threads are using this classpath
+		 */
+		@Override
+		@SneakyThrows
+		public synchronized void close() {
+			// entries can lazily read from the closed archives, so are found again if this classpath is used afterwards
+			loadedPaths.clear();
+			version++;
+			lookups.clear();
+			for (ZipArchive archive : archives.values())
+				archive.close();
+			archives.clear();
 		}
 
 		@Override
 		public String toString() {
 			return "FileClassPath{" +
-				"entries.size()=" + entries.size() +
+				"loadedPaths.size()=" + loadedPaths.size() +
 				", paths=" + paths +
-				", initialised=" + initialised +
 				", parent=" + parent +
 				'}';
 		}
+
+		/**
+		 * Loading of one path, run by whichever of the executor or a lookup gets to it first
+		 */
+		@RequiredArgsConstructor
+		private final class PathLoad extends CompletableFuture<PathEntries> implements Runnable {
+			private final Path path;
+			@Nullable
+			private final Executor executor;
+			private final AtomicBoolean started = new AtomicBoolean();
+
+			@Override
+			public void run() {
+				if (!started.compareAndSet(false, true))
+					return;
+				try {
+					complete(loadPath(path, executor));
+				} catch (Throwable t) {
+					// not kept, so the next lookup tries again
+					loadedPaths.remove(path, this);
+					completeExceptionally(t);
+				}
+			}
+
+			void reject(Throwable t) {
+				// unless a lookup has already started it
+				if (started.compareAndSet(false, true)) {
+					loadedPaths.remove(path, this);
+					completeExceptionally(t);
+				}
+			}
+		}
+
+		/**
+		 * Classes found in one path
+		 */
+		private static final class PathEntries {
+			final Map<String, ClassInfo> classes = new HashMap<>();
+			// .java files by the class name their path implies, parsed the first time a class in them is looked up
+			final Map<String, Supplier<Map<String, ClassInfo>>> sources = new HashMap<>();
+
+			@Nullable
+			ClassInfo get(String className) {
+				val classInfo = classes.get(className);
+				if (classInfo != null || sources.isEmpty())
+					return classInfo;
+
+				Supplier<Map<String, ClassInfo>> source = sources.get(className);
+				if (source == null) {
+					// nested classes are declared in their outermost class's file
+					val nested = className.indexOf('$', className.lastIndexOf('.') + 1);
+					if (nested != -1)
+						source = sources.get(className.substring(0, nested));
+				}
+				return source == null ? null : source.get().get(className);
+			}
+
+			void addAll(PathEntries other) {
+				classes.putAll(other.classes);
+				sources.putAll(other.sources);
+			}
+
+			void forEach(BiConsumer<String, ClassInfo> action) {
+				classes.forEach(action);
+				for (Supplier<Map<String, ClassInfo>> source : sources.values())
+					source.get().forEach(action);
+			}
+		}
+
+		@RequiredArgsConstructor
+		private static final class Fingerprint {
+			final int version;
+			final String value;
+		}
+
+		@RequiredArgsConstructor
+		private static final class Lookup {
+			// version of the classpath when the lookup started, so a lookup racing with addPath isn't trusted afterwards
+			final int version;
+			@Nullable
+			final ClassInfo classInfo;
+		}
+	}
+
+	/**
+	 * Classes in the runtime image's modules, read from the jrt filesystem only when they are looked up
+	 */
+	static class JrtClassPath extends ClassPathSolver {
+		private final FileSystem fs;
+		private final ConcurrentHashMap<String, List<Path>> packageModules = new ConcurrentHashMap<>();
+		private final ConcurrentHashMap<String, Optional<ClassInfo>> classes = new ConcurrentHashMap<>();
+
+		JrtClassPath(FileSystem fs) {
+			super(null);
+			this.fs = fs;
+		}
+
+		@Override
+		int getVersion() {
+			return 0;
+		}
+
+		@Override
+		String getFingerprint() {
+			return "jrt:" + System.getProperty("java.home") + '\0' + System.getProperty("java.runtime.version");
+		}
+
+		@Nullable
+		@Override
+		public ClassInfo getClassInfo(@Nonnull String className) {
+			Objects.requireNonNull(className);
+			return classes.computeIfAbsent(className, this::findClass).orElse(null);
+		}
+
+		private Optional<ClassInfo> findClass(String className) {
+			val lastDot = className.lastIndexOf('.');
+			if (lastDot == -1)
+				return Optional.empty();
+
+			val fileName = className.substring(lastDot + 1) + ".class";
+			for (Path module : packageModules.computeIfAbsent(className.substring(0, lastDot), this::findModules)) {
+				val file = module.resolve(fileName);
+				if (Files.isRegularFile(file))
+					return Optional.of(classInfo(className, () -> {
+						try {
+							return Files.readAllBytes(file);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}));
+			}
+			return Optional.empty();
+		}
+
+		// /packages/<package>/ has an entry for each module containing that package
+		@SneakyThrows
+		private List<Path> findModules(String packageName) {
+			val packageDirectory = fs.getPath("/packages", packageName);
+			if (!Files.isDirectory(packageDirectory))
+				return Collections.emptyList();
+
+			val packagePath = packageName.replace('.', '/');
+			try (val modules = Files.list(packageDirectory)) {
+				return modules.map(it -> fs.getPath("/modules", it.getFileName().toString(), packagePath)).collect(Collectors.toList());
+			}
+		}
+
+		@Override
+		public boolean addPath(Path path) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean hasPath(Path path) {
+			return false;
+		}
+
+		// only used to list every class, so the names aren't kept
+		@NotNull
+		@Override
+		@SneakyThrows
+		public Iterator<ClassInfo> iterator() {
+			val classNames = new ArrayList<String>();
+			try (val modules = Files.list(fs.getPath("/modules"))) {
+				for (Path module : CollectionUtil.iterable(modules)) {
+					try (val files = Files.walk(module)) {
+						files.map(it -> module.relativize(it).toString())
+							.filter(it -> it.endsWith(".class") && !it.equals("module-info.class"))
+							.forEach(it -> classNames.add(JVMUtil.fileNameToClassName(it)));
+					}
+				}
+			}
+			return classNames.stream().map(this::getClassInfo).filter(Objects::nonNull).iterator();
+		}
+
+		@Override
+		public String toString() {
+			return "JrtClassPath{" +
+				"classes.size()=" + classes.size() +
+				'}';
+		}
 	}
 
 	/*
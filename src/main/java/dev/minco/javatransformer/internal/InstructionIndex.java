@@ -0,0 +1,92 @@
+package dev.minco.javatransformer.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import dev.minco.javatransformer.api.code.CodeFragment;
+
+/**
+ * Index of a method's instructions by opcode, and of its method calls by name, built in one pass over its instructions
+ *
+ * Only valid until the method's instructions change, so it's dropped by {@link ByteCodeInfo.MethodNodeInfo#markCodeDirty()}.
+ */
+final class InstructionIndex {
+	private final InsnList instructions;
+	// labels, line numbers and frames have no opcode, so aren't indexed
+	@SuppressWarnings("unchecked")
+	private final List<AbstractInsnNode>[] byOpcode = new List[256];
+	private final Map<String, List<MethodInsnNode>> methodCallsByName = new HashMap<>();
+	// so each instruction is only wrapped once
+	private final Map<AbstractInsnNode, CodeFragment> fragments = new IdentityHashMap<>();
+
+	InstructionIndex(InsnList instructions) {
+		this.instructions = instructions;
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			val opcode = insn.getOpcode();
+			if (opcode < 0)
+				continue;
+			if (byOpcode[opcode] == null)
+				byOpcode[opcode] = new ArrayList<>();
+			byOpcode[opcode].add(insn);
+			if (insn instanceof MethodInsnNode)
+				methodCallsByName.computeIfAbsent(((MethodInsnNode) insn).name, it -> new ArrayList<>()).add((MethodInsnNode) insn);
+		}
+	}
+
+	/**
+	 * @return instructions with any of the given opcodes, in order
+	 */
+	List<AbstractInsnNode> get(int... opcodes) {
+		List<AbstractInsnNode> found = null;
+		boolean merged = false;
+		for (val opcode : opcodes) {
+			val matching = byOpcode[opcode];
+			if (matching == null)
+				continue;
+			if (found == null) {
+				found = matching;
+			} else {
+				if (!merged)
+					found = new ArrayList<>(found);
+				found.addAll(matching);
+				merged = true;
+			}
+		}
+		if (found == null)
+			return Collections.emptyList();
+		if (merged)
+			found.sort(Comparator.comparingInt(instructions::indexOf));
+		return Collections.unmodifiableList(found);
+	}
+
+	/**
+	 * @return calls to methods with the given name, in order
+	 */
+	List<MethodInsnNode> getMethodCalls(String name) {
+		val calls = methodCallsByName.get(name);
+		return calls == null ? Collections.emptyList() : Collections.unmodifiableList(calls);
+	}
+
+	@Nullable
+	@SuppressWarnings("unchecked")
+	synchronized <T extends CodeFragment> T getFragment(AbstractInsnNode insn, Class<T> fragmentType) {
+		val fragment = fragments.get(insn);
+		return fragmentType.isInstance(fragment) ? (T) fragment : null;
+	}
+
+	synchronized void putFragment(AbstractInsnNode insn, CodeFragment fragment) {
+		fragments.put(insn, fragment);
+	}
+}
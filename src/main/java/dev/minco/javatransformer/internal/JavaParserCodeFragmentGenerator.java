@@ -198,5 +198,12 @@ public class JavaParserCodeFragmentGenerator {
 		public String getName() {
 			return expr.getNameAsString();
 		}
+
+		@NonNull
+		@Override
+		public String getDescriptor() {
+			val method = methodInfo.get();
+			return new MethodDescriptor(Collections.emptyList(), method.getParameters(), method.getReturnType()).getDescriptor();
+		}
 	}
 }
@@ -0,0 +1,99 @@
+package dev.minco.javatransformer.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of a class's members by name, so finding a member only needs to compare those with the same name
+ *
+ * Built on first use, then kept up to date by {@link #add}, {@link #remove} and {@link #rename}.
+ * Members added or removed without going through those are noticed when they change the size of the member list,
+ * and members renamed directly are noticed when they are found under their old name.
+ * Other direct changes, such as replacing a member in place, aren't noticed, so the index mustn't be used once those are possible.
+ */
+final class MemberIndex<T> {
+	private final Supplier<? extends List<? extends T>> members;
+	private final Function<? super T, String> name;
+	@Nullable
+	private Map<String, List<T>> byName;
+	private int indexedSize;
+
+	MemberIndex(Supplier<? extends List<? extends T>> members, Function<? super T, String> name) {
+		this.members = members;
+		this.name = name;
+	}
+
+	/**
+	 * @return members with the given name, in the order they were added
+	 */
+	synchronized List<T> get(String name) {
+		val members = this.members.get();
+		if (byName == null || indexedSize != members.size())
+			index(members);
+		List<T> named = byName.get(name);
+		if (named != null && !allNamed(named, name)) {
+			index(members);
+			named = byName.get(name);
+		}
+		return named == null ? Collections.emptyList() : new ArrayList<>(named);
+	}
+
+	private void index(List<? extends T> members) {
+		byName = new HashMap<>();
+		for (T member : members)
+			put(member);
+		indexedSize = members.size();
+	}
+
+	private boolean allNamed(List<T> members, String name) {
+		for (T member : members)
+			if (!name.equals(this.name.apply(member)))
+				return false;
+		return true;
+	}
+
+	private void put(T member) {
+		byName.computeIfAbsent(name.apply(member), it -> new ArrayList<>(1)).add(member);
+	}
+
+	synchronized void add(T member) {
+		if (byName == null)
+			return;
+		put(member);
+		indexedSize++;
+	}
+
+	synchronized void remove(T member) {
+		if (byName == null)
+			return;
+		val named = byName.get(name.apply(member));
+		if (named != null)
+			named.removeIf(it -> it == member);
+		indexedSize--;
+	}
+
+	/**
+	 * Must be called after the member's name has changed
+	 */
+	synchronized void rename(T member, String oldName) {
+		if (byName == null)
+			return;
+		val named = byName.get(oldName);
+		// members which aren't in this index, such as clones, are left out
+		if (named != null && named.removeIf(it -> it == member))
+			put(member);
+	}
+
+	synchronized void clear() {
+		byName = null;
+	}
+}
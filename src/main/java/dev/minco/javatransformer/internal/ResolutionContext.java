@@ -147,7 +147,7 @@ public class ResolutionContext {
 
 	public Type resolve(com.github.javaparser.ast.type.Type type) {
 		if (type instanceof PrimitiveType) {
-			return new Type(JVMUtil.primitiveTypeToDescriptor(((PrimitiveType) type).getType().name().toLowerCase()));
+			return Type.ofDescriptor(JVMUtil.primitiveTypeToDescriptor(((PrimitiveType) type).getType().name().toLowerCase()));
 		} else if (type instanceof VoidType) {
 			return new Type("V");
 		} else {
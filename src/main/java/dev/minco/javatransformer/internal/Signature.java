@@ -82,7 +82,7 @@ public final class Signature {
 		if (signature != null)
 			returnSignature = after(')', signature);
 
-		return new Type(returnDescriptor, returnSignature);
+		return Type.ofDescriptor(returnDescriptor, returnSignature);
 	}
 
 	static List<Parameter> getParameters(MethodNode node) {
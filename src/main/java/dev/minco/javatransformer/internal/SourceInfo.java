@@ -8,9 +8,10 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.ToString;
 import lombok.val;
 
 import org.jetbrains.annotations.Nullable;
@@ -42,6 +43,8 @@ import com.github.javaparser.ast.nodeTypes.NodeWithModifiers;
 import com.github.javaparser.ast.nodeTypes.NodeWithOptionalBlockStmt;
 import com.github.javaparser.ast.nodeTypes.NodeWithParameters;
 import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
+import com.github.javaparser.ast.observer.AstObserverAdapter;
+import com.github.javaparser.ast.observer.ObservableProperty;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.stmt.ThrowStmt;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
@@ -63,7 +66,6 @@ import dev.minco.javatransformer.internal.util.CachingSupplier;
 import dev.minco.javatransformer.internal.util.NodeUtil;
 
 @Data
-@AllArgsConstructor
 @SuppressWarnings("unchecked")
 public class SourceInfo implements ClassInfo {
 	@Getter(AccessLevel.NONE)
@@ -76,6 +78,39 @@ public class SourceInfo implements ClassInfo {
 	private final List<Annotation> annotations = getAnnotationsInternal();
 	@Getter(lazy = true)
 	private final ResolutionContext context = getContextInternal();
+	/**
+	 * Set when the type declaration has been changed and needs to be written again
+	 */
+	private boolean modified;
+	/**
+	 * The same source parsed with bodies, if they were stripped from this type's declaration
+	 */
+	@Getter(AccessLevel.NONE)
+	@Nullable
+	private final Supplier<CompilationUnit> fullCompilationUnit;
+	@Getter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private final MemberIndex<BodyDeclaration<?>> methodIndex = new MemberIndex<>(() -> type.get().getMembers(), SourceInfo::getMethodName);
+	@Getter(AccessLevel.NONE)
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	private final MemberIndex<BodyDeclaration<?>> fieldIndex = new MemberIndex<>(() -> type.get().getMembers(), SourceInfo::getFieldName);
+
+	public SourceInfo(Supplier<TypeDeclaration<?>> type, String className, ClassPath classPath) {
+		this(type, className, classPath, null);
+	}
+
+	public SourceInfo(Supplier<TypeDeclaration<?>> type, String className, ClassPath classPath, @Nullable Supplier<CompilationUnit> fullCompilationUnit) {
+		this.fullCompilationUnit = fullCompilationUnit;
+		this.type = CachingSupplier.of(() -> {
+			val declaration = type.get();
+			declaration.register(new ModificationObserver(), Node.ObserverRegistrationMode.SELF_PROPAGATING);
+			return declaration;
+		});
+		this.className = className;
+		this.classPath = classPath;
+	}
 
 	static void changeTypeContext(ResolutionContext old, ResolutionContext new_, FieldDeclaration f) {
 		val v = f.getVariable(0);
@@ -174,7 +209,9 @@ public class SourceInfo implements ClassInfo {
 
 	@Override
 	public void setAccessFlags(AccessFlags accessFlags) {
-		type.get().setModifiers(accessFlags.without(requiredFlags()).toJavaParserModifierSet());
+		val modifiers = accessFlags.without(requiredFlags()).toJavaParserModifierSet();
+		if (!modifiers.equals(type.get().getModifiers()))
+			type.get().setModifiers(modifiers);
 	}
 
 	@Override
@@ -295,6 +332,46 @@ public class SourceInfo implements ClassInfo {
 		return results;
 	}
 
+	@Nullable
+	private static String getMethodName(BodyDeclaration<?> member) {
+		if (member instanceof CallableDeclaration<?>)
+			return ((CallableDeclaration<?>) member).getNameAsString();
+		if (member instanceof AnnotationMemberDeclaration)
+			return ((AnnotationMemberDeclaration) member).getNameAsString();
+		return null;
+	}
+
+	@Nullable
+	private static String getFieldName(BodyDeclaration<?> member) {
+		return member instanceof FieldDeclaration ? ((FieldDeclaration) member).getVariable(0).getNameAsString() : null;
+	}
+
+	@Nullable
+	@Override
+	public MethodInfo get(MethodInfo like) {
+		for (BodyDeclaration<?> declaration : methodIndex.get(like.getName())) {
+			val methodInfo = getMethodInfoWrapper(declaration);
+			if (like.similar(methodInfo))
+				return methodInfo;
+		}
+		return null;
+	}
+
+	@Nullable
+	@Override
+	public FieldInfo get(FieldInfo like) {
+		// enum constants aren't members, so aren't indexed
+		if (type.get() instanceof EnumDeclaration)
+			return ClassInfo.super.get(like);
+
+		for (BodyDeclaration<?> declaration : fieldIndex.get(like.getName())) {
+			val fieldInfo = new FieldDeclarationWrapper((FieldDeclaration) declaration);
+			if (like.similar(fieldInfo))
+				return fieldInfo;
+		}
+		return null;
+	}
+
 	public Stream<MethodInfo> getMethods() {
 		return type.get().getMembers().stream()
 			.filter(it -> it instanceof CallableDeclaration<?> || it instanceof AnnotationMemberDeclaration)
@@ -366,6 +443,61 @@ public class SourceInfo implements ClassInfo {
 		throw new UnsupportedOperationException(); // TODO
 	}
 
+	private class ModificationObserver extends AstObserverAdapter {
+		@Override
+		public void propertyChange(Node observedNode, ObservableProperty property, Object oldValue, Object newValue) {
+			modified = true;
+			// renames are rare, so the index is just built again
+			if ((property == ObservableProperty.NAME || property == ObservableProperty.IDENTIFIER) && isMemberName(observedNode)) {
+				methodIndex.clear();
+				fieldIndex.clear();
+			}
+		}
+
+		private boolean isMemberName(Node node) {
+			if (node instanceof SimpleName)
+				node = node.getParentNode().orElse(null);
+			if (node instanceof VariableDeclarator)
+				node = node.getParentNode().orElse(null);
+			return node != null && node.getParentNode().orElse(null) == type.get();
+		}
+
+		private void memberAdded(NodeList<?> list, Node node) {
+			if (list == type.get().getMembers()) {
+				methodIndex.add((BodyDeclaration<?>) node);
+				fieldIndex.add((BodyDeclaration<?>) node);
+			}
+		}
+
+		private void memberRemoved(NodeList<?> list, Node node) {
+			if (list == type.get().getMembers()) {
+				methodIndex.remove((BodyDeclaration<?>) node);
+				fieldIndex.remove((BodyDeclaration<?>) node);
+			}
+		}
+
+		@Override
+		public void parentChange(Node observedNode, Node previousParent, Node newParent) {
+			modified = true;
+		}
+
+		@Override
+		public void listChange(NodeList<?> observedNode, ListChangeType type, int index, Node nodeAddedOrRemoved) {
+			modified = true;
+			if (type == ListChangeType.ADDITION)
+				memberAdded(observedNode, nodeAddedOrRemoved);
+			else
+				memberRemoved(observedNode, nodeAddedOrRemoved);
+		}
+
+		@Override
+		public void listReplacement(NodeList<?> observedNode, int index, Node oldNode, Node newNode) {
+			modified = true;
+			memberRemoved(observedNode, oldNode);
+			memberAdded(observedNode, newNode);
+		}
+	}
+
 	public class FieldDeclarationWrapper implements FieldInfo {
 		private final FieldDeclaration declaration;
 		private ResolutionContext context;
@@ -400,7 +532,9 @@ public class SourceInfo implements ClassInfo {
 
 		@Override
 		public void setAccessFlags(AccessFlags accessFlags) {
-			declaration.setModifiers(accessFlags.toJavaParserModifierSet());
+			val modifiers = accessFlags.toJavaParserModifierSet();
+			if (!modifiers.equals(declaration.getModifiers()))
+				declaration.setModifiers(modifiers);
 		}
 
 		@Override
@@ -473,7 +607,9 @@ public class SourceInfo implements ClassInfo {
 
 		@Override
 		public void setAccessFlags(AccessFlags accessFlags) {
-			declaration.setModifiers(accessFlags.without(requiredFlags()).toJavaParserModifierSet());
+			val modifiers = accessFlags.without(requiredFlags()).toJavaParserModifierSet();
+			if (!modifiers.equals(declaration.getModifiers()))
+				declaration.setModifiers(modifiers);
 		}
 
 		@Override
@@ -546,6 +682,20 @@ public class SourceInfo implements ClassInfo {
 
 		@Nullable
 		public abstract BlockStmt getBody();
+
+		/**
+		 * @return the full body from {@link #fullCompilationUnit} if this declaration's body was stripped, otherwise the given body
+		 */
+		@Nullable
+		protected BlockStmt fullBody(@Nullable BlockStmt body) {
+			if (body == null || fullCompilationUnit == null)
+				return body;
+			val full = NodeUtil.findSamePosition(declaration, fullCompilationUnit.get());
+			// members added after parsing have no counterpart
+			if (!(full instanceof CallableDeclaration<?>) || !((CallableDeclaration<?>) full).getSignature().equals(declaration.getSignature()))
+				return body;
+			return full instanceof MethodDeclaration ? ((MethodDeclaration) full).getBody().orElse(body) : ((ConstructorDeclaration) full).getBody();
+		}
 	}
 
 	public class ConstructorDeclarationWrapper extends CallableDeclarationWrapper<ConstructorDeclaration> {
@@ -566,7 +716,7 @@ public class SourceInfo implements ClassInfo {
 
 		@Override
 		public BlockStmt getBody() {
-			return declaration.getBody();
+			return fullBody(declaration.getBody());
 		}
 	}
 
@@ -587,7 +737,7 @@ public class SourceInfo implements ClassInfo {
 
 		@Override
 		public BlockStmt getBody() {
-			return declaration.getBody().orElse(null);
+			return fullBody(declaration.getBody().orElse(null));
 		}
 	}
 
@@ -1,12 +1,23 @@
 package dev.minco.javatransformer.internal.asm;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import lombok.NonNull;
+import lombok.val;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class AsmUtil {
 	@Nonnull
@@ -21,6 +32,81 @@ public class AsmUtil {
 		return node;
 	}
 
+	/**
+	 * Reads only what is needed to resolve types against a class: its header, fields, method signatures and annotations
+	 */
+	@Nonnull
+	public static ClassNode getStubClassNode(@NonNull byte[] data) {
+		ClassNode node = new ClassNode();
+		// not SKIP_DEBUG, which also drops parameter names
+		new ClassReader(data).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+		return node;
+	}
+
+	/**
+	 * Writes a class node which was read from the given reader
+	 *
+	 * Methods which are still present and unmodified are copied directly from the reader's bytes by ASM instead of being
+	 * written again, so they don't pay for {@link org.objectweb.asm.ClassWriter#COMPUTE_FRAMES} or
+	 * {@link org.objectweb.asm.ClassWriter#COMPUTE_MAXS}.
+	 *
+	 * @param reader          reader the node was read from
+	 * @param node            node to write
+	 * @param originalMethods methods of the node as originally read, in the same order as in the class file
+	 * @param isModified      whether a method from originalMethods may have been changed since it was read, which must be true unless it provably wasn't
+	 * @param flags           {@link org.objectweb.asm.ClassWriter} flags
+	 * @param filters         filters for {@link FilteringClassWriter}
+	 * @param typeHierarchy   used to compute frames, or null to fall back to loading classes
+	 */
+	public static byte[] writeClass(ClassReader reader, ClassNode node, @Nullable List<MethodNode> originalMethods, Predicate<MethodNode> isModified, int flags, Map<String, String> filters, @Nullable ClassPathTypeHierarchy typeHierarchy) {
+		val writer = new FilteringClassWriter(reader, flags, typeHierarchy);
+		writer.filters.putAll(filters);
+
+		// filters must be applied to every method, so nothing can be copied as is
+		if (originalMethods == null || !filters.isEmpty()) {
+			node.accept(writer);
+			return writer.toByteArray();
+		}
+
+		val methods = node.methods;
+		val pending = Collections.newSetFromMap(new IdentityHashMap<MethodNode, Boolean>());
+		pending.addAll(methods);
+		node.methods = Collections.emptyList();
+		try {
+			// methods are visited afterwards, and visitEnd must come after them
+			node.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+				@Override
+				public void visitEnd() {}
+			});
+		} finally {
+			node.methods = methods;
+		}
+
+		// ClassReader copies a method's bytes when visitMethod directly returns the MethodWriter of a writer sharing its constant pool
+		reader.accept(new ClassVisitor(Opcodes.ASM9) {
+			private int index;
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				val method = originalMethods.get(index++);
+				if (!pending.remove(method))
+					return null;
+				if (!isModified.test(method))
+					return writer.visitMethod(access, name, descriptor, signature, exceptions);
+				method.accept(writer);
+				return null;
+			}
+		}, 0);
+
+		// methods which were added after reading
+		for (MethodNode method : methods)
+			if (pending.contains(method))
+				method.accept(writer);
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
 	public static class Holder<T> {
 		public T value;
 	}
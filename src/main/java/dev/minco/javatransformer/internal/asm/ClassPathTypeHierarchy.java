@@ -0,0 +1,126 @@
+package dev.minco.javatransformer.internal.asm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+import dev.minco.javatransformer.api.AccessFlags;
+import dev.minco.javatransformer.api.ClassPath;
+import dev.minco.javatransformer.api.TransformationException;
+import dev.minco.javatransformer.api.Type;
+
+/**
+ * Answers {@link org.objectweb.asm.ClassWriter#getCommonSuperClass} from a {@link ClassPath} instead of by loading classes
+ *
+ * Super class chains are memoized, so one instance should be shared between all classes written against the same {@link ClassPath}
+ */
+@RequiredArgsConstructor
+public class ClassPathTypeHierarchy {
+	private static final String OBJECT = "java/lang/Object";
+
+	@NonNull
+	private final ClassPath classPath;
+	private final ConcurrentHashMap<String, TypeNode> types = new ConcurrentHashMap<>();
+
+	private static String internalName(Type type) {
+		return type.getClassName().replace('.', '/');
+	}
+
+	/**
+	 * Same semantics as {@link org.objectweb.asm.ClassWriter#getCommonSuperClass}
+	 *
+	 * @param a internal name of the first class
+	 * @param b internal name of the second class
+	 * @return internal name of the most specific common super class of a and b
+	 */
+	public String getCommonSuperClass(String a, String b) {
+		if (a.equals(b))
+			return a;
+
+		val typeA = get(a);
+		val typeB = get(b);
+		if (typeA.isAssignableFrom(typeB))
+			return a;
+		if (typeB.isAssignableFrom(typeA))
+			return b;
+		if (typeA.isInterface || typeB.isInterface)
+			return OBJECT;
+
+		for (String superClass : typeA.superClasses)
+			if (typeB.superClasses.contains(superClass))
+				return superClass;
+
+		return OBJECT;
+	}
+
+	private TypeNode get(String name) {
+		val cached = types.get(name);
+		if (cached != null)
+			return cached;
+
+		// not computeIfAbsent, as this recurses into super types
+		val classInfo = classPath.getClassInfo(name.replace('/', '.'));
+		if (classInfo == null)
+			throw new TransformationException("Couldn't find class " + name + " in the classpath while computing stack map frames");
+
+		val superType = classInfo.getSuperType();
+		val node = new TypeNode(name, classInfo.getAccessFlags().has(AccessFlags.ACC_INTERFACE), superType == null ? null : get(internalName(superType)), classInfo.getInterfaceTypes());
+		val existing = types.putIfAbsent(name, node);
+		return existing == null ? node : existing;
+	}
+
+	private final class TypeNode {
+		final String name;
+		final boolean isInterface;
+		/**
+		 * This class followed by its super classes, ending with java/lang/Object
+		 */
+		final List<String> superClasses;
+		@Nullable
+		final TypeNode superClass;
+		final List<Type> interfaceTypes;
+		@Getter(lazy = true)
+		private final Set<String> interfaces = findInterfaces();
+
+		TypeNode(String name, boolean isInterface, @Nullable TypeNode superClass, List<Type> interfaceTypes) {
+			this.name = name;
+			this.isInterface = isInterface;
+			this.superClass = superClass;
+			this.interfaceTypes = interfaceTypes;
+			val superClasses = new ArrayList<String>();
+			superClasses.add(name);
+			if (superClass != null)
+				superClasses.addAll(superClass.superClasses);
+			this.superClasses = Collections.unmodifiableList(superClasses);
+		}
+
+		boolean isAssignableFrom(TypeNode other) {
+			if (isInterface)
+				return other.getInterfaces().contains(name);
+			return other.superClasses.contains(name);
+		}
+
+		// interfaces are only needed when one side of a merge is an interface, so aren't looked up eagerly
+		private Set<String> findInterfaces() {
+			val interfaces = new HashSet<String>();
+			if (superClass != null)
+				interfaces.addAll(superClass.getInterfaces());
+			for (Type interfaceType : interfaceTypes) {
+				val interfaceName = internalName(interfaceType);
+				interfaces.add(interfaceName);
+				interfaces.addAll(get(interfaceName).getInterfaces());
+			}
+			return interfaces;
+		}
+	}
+}
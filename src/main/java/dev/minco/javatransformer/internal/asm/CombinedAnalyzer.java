@@ -5,6 +5,7 @@ import java.util.List;
 
 import lombok.val;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -25,23 +26,38 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 	private boolean[] queued;
 	private int[] queue;
 	private int top;
+	// frames before this index are reused from a previous analysis, and are never merged into
+	private int reused;
 
 	private CombinedAnalyzer(Interpreter<V> interpreter) {
 		this.interpreter = interpreter;
 	}
 
-	@SuppressWarnings("unchecked")
 	public static <A extends Value> Frame<A>[] analyze(Interpreter<A> interpreter, final String owner, final MethodNode m) throws AnalyzerException {
+		return analyze(interpreter, owner, m, null, 0).frames;
+	}
+
+	/**
+	 * Analyses a method, reusing the frames of a previous analysis of it for the instructions which can't have been affected by a change
+	 *
+	 * A frame is reused if its instruction is before the first changed instruction, and no instruction after that can jump back to it.
+	 *
+	 * @param previous analysis of the method before it was changed, or null to analyse all of it
+	 * @param unchanged number of instructions at the start of the method which are the same as when previous was made
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A extends Value> Analysis<A> analyze(Interpreter<A> interpreter, final String owner, final MethodNode m, @Nullable Analysis<A> previous, int unchanged) throws AnalyzerException {
 		if ((m.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0 || m.instructions.size() == 0) {
-			return (Frame<A>[]) new Frame<?>[0];
+			return new Analysis<>(owner, m, (Frame<A>[]) new Frame<?>[0], new AbstractInsnNode[0], new int[]{0});
 		}
-		return new CombinedAnalyzer<>(interpreter).analyze(owner, m);
+		return new CombinedAnalyzer<>(interpreter).analyze(owner, m, previous, unchanged);
 	}
 
 	@SuppressWarnings("unchecked")
-	private Frame<V>[] analyze(final String owner, final MethodNode m) throws AnalyzerException {
+	private Analysis<V> analyze(final String owner, final MethodNode m, @Nullable Analysis<V> previous, int unchanged) throws AnalyzerException {
 		int n = m.instructions.size();
 		InsnList insns = m.instructions;
+		AbstractInsnNode[] insnArray = insns.toArray();
 		List<TryCatchBlockNode>[] handlers = (List<TryCatchBlockNode>[]) new List<?>[n];
 		frames = (Frame<V>[]) new Frame<?>[n + 1];
 		queued = new boolean[n];
@@ -63,9 +79,33 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 			}
 		}
 
+		val lowestTargetFrom = lowestTargetFrom(insns, insnArray, handlers);
+		reused = previous == null ? 0 : previous.reusable(owner, m, insnArray, lowestTargetFrom, unchanged);
+
 		// initializes the data structures for the control flow analysis
 		Frame<V> current = new Frame<>(m.maxLocals, m.maxStack);
 		Frame<V> handler = new Frame<>(m.maxLocals, m.maxStack);
+		if (reused > 0) {
+			// only reused instructions which can continue to one after them need to be run again
+			System.arraycopy(previous.frames, 0, frames, 0, reused);
+			if (m.maxLocals != previous.maxLocals || m.maxStack != previous.maxStack)
+				resize(m, reused);
+			for (int i = reused - 1; i >= 0; i--) {
+				if (frames[i] != null && (i == reused - 1 || hasTargetFrom(insns, insnArray[i], handlers[i], reused))) {
+					queued[i] = true;
+					queue[top++] = i;
+				}
+			}
+		} else {
+			initialise(owner, m, current);
+		}
+
+		analyze(m, insns, handlers, current, handler);
+
+		return new Analysis<>(owner, m, frames, insnArray, lowestTargetFrom);
+	}
+
+	private void initialise(final String owner, final MethodNode m, Frame<V> current) throws AnalyzerException {
 		current.setReturn(interpreter.newValue(Type.getReturnType(m.desc)));
 		Type[] args = Type.getArgumentTypes(m.desc);
 		int local = 0;
@@ -83,7 +123,38 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 			current.setLocal(local++, interpreter.newValue(null));
 		}
 		merge(0, current);
+	}
+
+	/**
+	 * Grows the first count frames to the method's current maxLocals and maxStack.
+	 * Locals added since weren't used by the reused instructions, so are filled with the same uninitialised values a full analysis gives them.
+	 */
+	@SuppressWarnings("unchecked")
+	private void resize(final MethodNode m, int count) {
+		V returnValue = interpreter.newValue(Type.getReturnType(m.desc));
+		V[] padding = (V[]) new Value[m.maxLocals];
+		for (int i = 0; i < count; i++) {
+			val frame = frames[i];
+			if (frame == null)
+				continue;
+			val resized = new Frame<V>(m.maxLocals, m.maxStack);
+			resized.setReturn(returnValue);
+			for (int local = 0; local < m.maxLocals; local++) {
+				if (local < frame.getLocals()) {
+					resized.setLocal(local, frame.getLocal(local));
+					continue;
+				}
+				if (padding[local] == null)
+					padding[local] = interpreter.newValue(null);
+				resized.setLocal(local, padding[local]);
+			}
+			for (int stack = 0; stack < frame.getStackSize(); stack++)
+				resized.push(frame.getStack(stack));
+			frames[i] = resized;
+		}
+	}
 
+	private void analyze(final MethodNode m, InsnList insns, List<TryCatchBlockNode>[] handlers, Frame<V> current, Frame<V> handler) throws AnalyzerException {
 		// control flow analysis
 		while (top > 0) {
 			int insn = queue[--top];
@@ -152,11 +223,54 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 				throw new AnalyzerException(errorNode, message, e);
 			}
 		}
+	}
 
-		return frames;
+	/**
+	 * @return for each index, the lowest index which an instruction at or after it can jump or throw to, or the instruction count if there is none
+	 */
+	private static int[] lowestTargetFrom(InsnList insns, AbstractInsnNode[] insnArray, List<TryCatchBlockNode>[] handlers) {
+		val n = insnArray.length;
+		val lowest = new int[n + 1];
+		lowest[n] = n;
+		for (int i = n - 1; i >= 0; i--) {
+			int target = lowest[i + 1];
+			val insnNode = insnArray[i];
+			if (insnNode instanceof JumpInsnNode) {
+				target = Math.min(target, insns.indexOf(((JumpInsnNode) insnNode).label));
+			} else if (insnNode instanceof LookupSwitchInsnNode) {
+				val lsi = (LookupSwitchInsnNode) insnNode;
+				target = Math.min(target, insns.indexOf(lsi.dflt));
+				for (LabelNode label : lsi.labels)
+					target = Math.min(target, insns.indexOf(label));
+			} else if (insnNode instanceof TableSwitchInsnNode) {
+				val tsi = (TableSwitchInsnNode) insnNode;
+				target = Math.min(target, insns.indexOf(tsi.dflt));
+				for (LabelNode label : tsi.labels)
+					target = Math.min(target, insns.indexOf(label));
+			}
+			if (handlers[i] != null)
+				for (TryCatchBlockNode tcb : handlers[i])
+					target = Math.min(target, insns.indexOf(tcb.handler));
+			lowest[i] = target;
+		}
+		return lowest;
+	}
+
+	private static boolean hasTargetFrom(InsnList insns, AbstractInsnNode insnNode, @Nullable List<TryCatchBlockNode> insnHandlers, int from) {
+		if (insnNode instanceof JumpInsnNode)
+			return insns.indexOf(((JumpInsnNode) insnNode).label) >= from;
+		if (insnNode instanceof LookupSwitchInsnNode || insnNode instanceof TableSwitchInsnNode)
+			return true;
+		if (insnHandlers != null)
+			for (TryCatchBlockNode tcb : insnHandlers)
+				if (insns.indexOf(tcb.handler) >= from)
+					return true;
+		return false;
 	}
 
 	private void merge(final int insn, final Frame<V> frame) throws AnalyzerException {
+		if (insn < reused)
+			return;
 		Frame<V> oldFrame = frames[insn];
 		boolean changes;
 
@@ -172,6 +286,56 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 		}
 	}
 
+	/**
+	 * Frames of an analysed method, along with what's needed to reuse them after the method is changed
+	 */
+	public static final class Analysis<V extends Value> {
+		public final Frame<V>[] frames;
+		private final String owner;
+		private final String desc;
+		private final int access;
+		private final int maxLocals;
+		private final int maxStack;
+		private final AbstractInsnNode[] instructions;
+		private final int[] lowestTargetFrom;
+
+		private Analysis(String owner, MethodNode m, Frame<V>[] frames, AbstractInsnNode[] instructions, int[] lowestTargetFrom) {
+			this.frames = frames;
+			this.owner = owner;
+			desc = m.desc;
+			access = m.access;
+			maxLocals = m.maxLocals;
+			maxStack = m.maxStack;
+			this.instructions = instructions;
+			this.lowestTargetFrom = lowestTargetFrom;
+		}
+
+		/**
+		 * @return how many frames at the start of this analysis are still correct for the changed method
+		 */
+		private int reusable(String owner, MethodNode m, AbstractInsnNode[] insnArray, int[] lowestTargetFrom, int unchanged) {
+			// frames are grown to fit more locals or stack, but can't be shrunk as the values past the new limits may have been used
+			if (!owner.equals(this.owner) || !m.desc.equals(desc) || m.access != access || m.maxLocals < maxLocals || m.maxStack < maxStack)
+				return 0;
+
+			int reusable = Math.min(unchanged, Math.min(insnArray.length, instructions.length));
+			for (int i = 0; i < reusable; i++) {
+				if (insnArray[i] != instructions[i]) {
+					reusable = i;
+					break;
+				}
+			}
+
+			// jumps back into the reused frames, before or after the change, could have changed them
+			while (true) {
+				val lowest = Math.min(lowestTargetFrom[reusable], this.lowestTargetFrom[reusable]);
+				if (lowest >= reusable)
+					return reusable;
+				reusable = lowest;
+			}
+		}
+	}
+
 	public static class Frame<V extends Value> extends org.objectweb.asm.tree.analysis.Frame<V> {
 		public Frame(int nLocals, int nStack) {
 			super(nLocals, nStack);
@@ -186,7 +350,7 @@ public class CombinedAnalyzer<V extends Value> implements Opcodes {
 		public V pop() {
 			val top = getStackSize();
 			if (top == 0) {
-				push((V) CombinedValue.of(null, CombinedValue.POPPED_FROM_BOTTOM));
+				push((V) CombinedValue.of(null, InsnSources.POPPED_FROM_BOTTOM));
 			}
 
 			return super.pop();
@@ -1,7 +1,5 @@
 package dev.minco.javatransformer.internal.asm;
 
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 
@@ -13,6 +11,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.IntInsnNode;
 import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
@@ -23,12 +22,31 @@ import org.objectweb.asm.tree.analysis.AnalyzerException;
 import org.objectweb.asm.tree.analysis.Interpreter;
 
 public class CombinedInterpreter extends Interpreter<CombinedValue> implements Opcodes {
-	public CombinedInterpreter() {
-		super(ASM5);
+	private final InsnList instructions;
+	private final AbstractInsnNode[] instructionArray;
+	// one shared instance for each instruction which is the only source of a value
+	private final InsnSources[] singleSources;
+
+	/**
+	 * @param instructions the instructions of the method which will be analysed
+	 */
+	public CombinedInterpreter(InsnList instructions) {
+		this(ASM5, instructions);
 	}
 
-	protected CombinedInterpreter(final int api) {
+	protected CombinedInterpreter(final int api, InsnList instructions) {
 		super(api);
+		this.instructions = instructions;
+		instructionArray = instructions.toArray();
+		singleSources = new InsnSources[instructionArray.length];
+	}
+
+	private InsnSources sources(AbstractInsnNode insn) {
+		val index = instructions.indexOf(insn);
+		InsnSources sources = singleSources[index];
+		if (sources == null)
+			singleSources[index] = sources = InsnSources.of(index, instructionArray);
+		return sources;
 	}
 
 	@Nullable
@@ -44,22 +62,22 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case I2B:
 			case I2C:
 			case I2S:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case FNEG:
 			case I2F:
 			case L2F:
 			case D2F:
-				return CombinedValue.of(Type.FLOAT_TYPE, insn);
+				return CombinedValue.of(Type.FLOAT_TYPE, sources(insn));
 			case LNEG:
 			case I2L:
 			case F2L:
 			case D2L:
-				return CombinedValue.of(Type.LONG_TYPE, insn);
+				return CombinedValue.of(Type.LONG_TYPE, sources(insn));
 			case DNEG:
 			case I2D:
 			case L2D:
 			case F2D:
-				return CombinedValue.of(Type.DOUBLE_TYPE, insn);
+				return CombinedValue.of(Type.DOUBLE_TYPE, sources(insn));
 			case IFEQ:
 			case IFNE:
 			case IFLT:
@@ -76,40 +94,40 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case PUTSTATIC:
 				return null;
 			case GETFIELD:
-				return CombinedValue.of(Type.getType(((FieldInsnNode) insn).desc), insn);
+				return CombinedValue.of(Type.getType(((FieldInsnNode) insn).desc), sources(insn));
 			case NEWARRAY:
 				switch (((IntInsnNode) insn).operand) {
 					case T_BOOLEAN:
-						return CombinedValue.of(Type.getType("[Z"), insn);
+						return CombinedValue.of(Type.getType("[Z"), sources(insn));
 					case T_CHAR:
-						return CombinedValue.of(Type.getType("[C"), insn);
+						return CombinedValue.of(Type.getType("[C"), sources(insn));
 					case T_BYTE:
-						return CombinedValue.of(Type.getType("[B"), insn);
+						return CombinedValue.of(Type.getType("[B"), sources(insn));
 					case T_SHORT:
-						return CombinedValue.of(Type.getType("[S"), insn);
+						return CombinedValue.of(Type.getType("[S"), sources(insn));
 					case T_INT:
-						return CombinedValue.of(Type.getType("[I"), insn);
+						return CombinedValue.of(Type.getType("[I"), sources(insn));
 					case T_FLOAT:
-						return CombinedValue.of(Type.getType("[F"), insn);
+						return CombinedValue.of(Type.getType("[F"), sources(insn));
 					case T_DOUBLE:
-						return CombinedValue.of(Type.getType("[D"), insn);
+						return CombinedValue.of(Type.getType("[D"), sources(insn));
 					case T_LONG:
-						return CombinedValue.of(Type.getType("[J"), insn);
+						return CombinedValue.of(Type.getType("[J"), sources(insn));
 					default:
 						throw new AnalyzerException(insn, "Invalid array type");
 				}
 			case ANEWARRAY:
 				String desc = ((TypeInsnNode) insn).desc;
-				return CombinedValue.of(Type.getType("[" + Type.getObjectType(desc)), insn);
+				return CombinedValue.of(Type.getType("[" + Type.getObjectType(desc)), sources(insn));
 			case ARRAYLENGTH:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case ATHROW:
 				return null;
 			case CHECKCAST:
 				desc = ((TypeInsnNode) insn).desc;
-				return CombinedValue.of(Type.getObjectType(desc), Collections.singleton(insn));
+				return CombinedValue.of(Type.getObjectType(desc), sources(insn));
 			case INSTANCEOF:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case MONITORENTER:
 			case MONITOREXIT:
 			case IFNULL:
@@ -132,11 +150,11 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 	public CombinedValue naryOperation(final AbstractInsnNode insn, final List<? extends CombinedValue> values) throws AnalyzerException {
 		int opcode = insn.getOpcode();
 		if (opcode == MULTIANEWARRAY) {
-			return CombinedValue.of(Type.getType(((MultiANewArrayInsnNode) insn).desc), insn);
+			return CombinedValue.of(Type.getType(((MultiANewArrayInsnNode) insn).desc), sources(insn));
 		} else if (opcode == INVOKEDYNAMIC) {
-			return CombinedValue.of(Type.getReturnType(((InvokeDynamicInsnNode) insn).desc), insn);
+			return CombinedValue.of(Type.getReturnType(((InvokeDynamicInsnNode) insn).desc), sources(insn));
 		} else {
-			return CombinedValue.of(Type.getReturnType(((MethodInsnNode) insn).desc), insn);
+			return CombinedValue.of(Type.getReturnType(((MethodInsnNode) insn).desc), sources(insn));
 		}
 	}
 
@@ -147,7 +165,7 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 	@Deprecated
 	@Override
 	public CombinedValue newValue(final Type type) {
-		return CombinedValue.of(type, CombinedValue.PREFILLED);
+		return CombinedValue.of(type, InsnSources.PREFILLED);
 	}
 
 	@Nullable
@@ -155,7 +173,7 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 	public CombinedValue newOperation(final AbstractInsnNode insn) throws AnalyzerException {
 		switch (insn.getOpcode()) {
 			case ACONST_NULL:
-				return CombinedValue.of(CombinedValue.OBJECT_TYPE, insn);
+				return CombinedValue.of(CombinedValue.OBJECT_TYPE, sources(insn));
 			case ICONST_M1:
 			case ICONST_0:
 			case ICONST_1:
@@ -165,40 +183,40 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case ICONST_5:
 			case BIPUSH:
 			case SIPUSH:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case LCONST_0:
 			case LCONST_1:
-				return CombinedValue.of(Type.LONG_TYPE, insn);
+				return CombinedValue.of(Type.LONG_TYPE, sources(insn));
 			case FCONST_0:
 			case FCONST_1:
 			case FCONST_2:
-				return CombinedValue.of(Type.FLOAT_TYPE, insn);
+				return CombinedValue.of(Type.FLOAT_TYPE, sources(insn));
 			case DCONST_0:
 			case DCONST_1:
-				return CombinedValue.of(Type.DOUBLE_TYPE, insn);
+				return CombinedValue.of(Type.DOUBLE_TYPE, sources(insn));
 			case LDC:
 				Object cst = ((LdcInsnNode) insn).cst;
 				if (cst instanceof Integer) {
-					return CombinedValue.of(Type.INT_TYPE, insn);
+					return CombinedValue.of(Type.INT_TYPE, sources(insn));
 				} else if (cst instanceof Float) {
-					return CombinedValue.of(Type.FLOAT_TYPE, insn);
+					return CombinedValue.of(Type.FLOAT_TYPE, sources(insn));
 				} else if (cst instanceof Long) {
-					return CombinedValue.of(Type.LONG_TYPE, insn);
+					return CombinedValue.of(Type.LONG_TYPE, sources(insn));
 				} else if (cst instanceof Double) {
-					return CombinedValue.of(Type.DOUBLE_TYPE, insn);
+					return CombinedValue.of(Type.DOUBLE_TYPE, sources(insn));
 				} else if (cst instanceof String) {
-					return CombinedValue.of(Type.getObjectType("java/lang/String"), insn);
+					return CombinedValue.of(Type.getObjectType("java/lang/String"), sources(insn));
 				} else if (cst instanceof Type) {
 					int sort = ((Type) cst).getSort();
 					if (sort == Type.OBJECT || sort == Type.ARRAY) {
-						return CombinedValue.of(Type.getObjectType("java/lang/Class"), insn);
+						return CombinedValue.of(Type.getObjectType("java/lang/Class"), sources(insn));
 					} else if (sort == Type.METHOD) {
-						return CombinedValue.of(Type.getObjectType("java/lang/invoke/MethodType"), insn);
+						return CombinedValue.of(Type.getObjectType("java/lang/invoke/MethodType"), sources(insn));
 					} else {
 						throw new IllegalArgumentException("Illegal LDC constant " + cst + " with unknown sort " + sort);
 					}
 				} else if (cst instanceof Handle) {
-					return CombinedValue.of(Type.getObjectType("java/lang/invoke/MethodHandle"), insn);
+					return CombinedValue.of(Type.getObjectType("java/lang/invoke/MethodHandle"), sources(insn));
 				} else {
 					throw new IllegalArgumentException("Illegal LDC constant "
 						+ cst);
@@ -206,9 +224,9 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case JSR:
 				throw new UnsupportedOperationException("JSR not supported. Use JSRInlinerAdapter to inline JSR subroutines.");
 			case GETSTATIC:
-				return CombinedValue.of(Type.getType(((FieldInsnNode) insn).desc), insn);
+				return CombinedValue.of(Type.getType(((FieldInsnNode) insn).desc), sources(insn));
 			case NEW:
-				return CombinedValue.of(Type.getObjectType(((TypeInsnNode) insn).desc), insn);
+				return CombinedValue.of(Type.getObjectType(((TypeInsnNode) insn).desc), sources(insn));
 			default:
 				throw new Error("Internal error.");
 		}
@@ -217,7 +235,7 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 	@Override
 	public CombinedValue copyOperation(final AbstractInsnNode insn, final CombinedValue value) throws AnalyzerException {
 		// TODO: Is this right? SourceInterpreter does this, but isn't it more useful to keep the source as the one we copied from?
-		// return CombinedValue.of(value.getType(), Collections.singleton(insn));
+		// return CombinedValue.of(value.getType(), sources(insn));
 
 		return value;
 	}
@@ -242,14 +260,14 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case IAND:
 			case IOR:
 			case IXOR:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case FALOAD:
 			case FADD:
 			case FSUB:
 			case FMUL:
 			case FDIV:
 			case FREM:
-				return CombinedValue.of(Type.FLOAT_TYPE, insn);
+				return CombinedValue.of(Type.FLOAT_TYPE, sources(insn));
 			case LALOAD:
 			case LADD:
 			case LSUB:
@@ -262,22 +280,22 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 			case LAND:
 			case LOR:
 			case LXOR:
-				return CombinedValue.of(Type.LONG_TYPE, insn);
+				return CombinedValue.of(Type.LONG_TYPE, sources(insn));
 			case DALOAD:
 			case DADD:
 			case DSUB:
 			case DMUL:
 			case DDIV:
 			case DREM:
-				return CombinedValue.of(Type.DOUBLE_TYPE, insn);
+				return CombinedValue.of(Type.DOUBLE_TYPE, sources(insn));
 			case AALOAD:
-				return CombinedValue.of(CombinedValue.OBJECT_TYPE, insn);
+				return CombinedValue.of(CombinedValue.OBJECT_TYPE, sources(insn));
 			case LCMP:
 			case FCMPL:
 			case FCMPG:
 			case DCMPL:
 			case DCMPG:
-				return CombinedValue.of(Type.INT_TYPE, insn);
+				return CombinedValue.of(Type.INT_TYPE, sources(insn));
 			case IF_ICMPEQ:
 			case IF_ICMPNE:
 			case IF_ICMPLT:
@@ -303,9 +321,9 @@ public class CombinedInterpreter extends Interpreter<CombinedValue> implements O
 		if (!Objects.equals(type, w.getType()))
 			type = w.isReference() && v.isReference() ? CombinedValue.OBJECT_TYPE : null;
 
-		val s = new HashSet<AbstractInsnNode>();
-		s.addAll(v.insns);
-		s.addAll(w.insns);
-		return CombinedValue.of(type, s);
+		val sources = InsnSources.union(v.sources, w.sources);
+		if (sources == v.sources && Objects.equals(type, v.getType()))
+			return v;
+		return CombinedValue.of(type, sources);
 	}
 }
@@ -1,11 +1,9 @@
 package dev.minco.javatransformer.internal.asm;
 
-import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 
 import lombok.EqualsAndHashCode;
-import lombok.val;
 
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
@@ -31,12 +29,12 @@ public class CombinedValue implements Value, Opcodes {
 			return "Pre-filled value. Method parameter, this, or caught exception/NOP";
 		}
 	};
-	private static final CombinedValue UNINITIALIZED_VALUE = new CombinedValue(null, Collections.emptySet());
-	private static final CombinedValue INT_VALUE = new CombinedValue(Type.INT_TYPE, Collections.emptySet());
-	private static final CombinedValue FLOAT_VALUE = new CombinedValue(Type.FLOAT_TYPE, Collections.emptySet());
-	private static final CombinedValue LONG_VALUE = new CombinedValue(Type.LONG_TYPE, Collections.emptySet());
-	private static final CombinedValue DOUBLE_VALUE = new CombinedValue(Type.DOUBLE_TYPE, Collections.emptySet());
-	private static final CombinedValue REFERENCE_VALUE = new CombinedValue(OBJECT_TYPE, Collections.emptySet());
+	private static final CombinedValue UNINITIALIZED_VALUE = new CombinedValue(null, InsnSources.EMPTY);
+	private static final CombinedValue INT_VALUE = new CombinedValue(Type.INT_TYPE, InsnSources.EMPTY);
+	private static final CombinedValue FLOAT_VALUE = new CombinedValue(Type.FLOAT_TYPE, InsnSources.EMPTY);
+	private static final CombinedValue LONG_VALUE = new CombinedValue(Type.LONG_TYPE, InsnSources.EMPTY);
+	private static final CombinedValue DOUBLE_VALUE = new CombinedValue(Type.DOUBLE_TYPE, InsnSources.EMPTY);
+	private static final CombinedValue REFERENCE_VALUE = new CombinedValue(OBJECT_TYPE, InsnSources.EMPTY);
 	/**
 	 * The instructions that can produce this value. For example, for the Java code below, the instructions that can produce the value of <b>i</b> at line 5 are the txo ISTORE instructions at line 1 and 3:
 	 * 
@@ -48,34 +46,29 @@ public class CombinedValue implements Value, Opcodes {
 	 * 5: return i;
 	 * </pre>
 	 * 
-	 * This field is a set of {@link AbstractInsnNode} objects.
+	 * These are kept as the instructions' indexes, see {@link #getInsns()} for the instructions themselves.
 	 */
-	public final Set<AbstractInsnNode> insns;
+	public final InsnSources sources;
 	@Nullable
 	private final Type type;
 
-	protected CombinedValue(@Nullable final Type type, final Set<AbstractInsnNode> insns) {
+	protected CombinedValue(@Nullable final Type type, final InsnSources sources) {
 		this.type = type;
-		this.insns = insns;
+		this.sources = sources;
 	}
 
 	@Nullable
 	@Deprecated
 	public static CombinedValue of(@Nullable Type type) {
-		return of(type, Collections.emptySet());
+		return of(type, InsnSources.EMPTY);
 	}
 
 	@Nullable
-	public static CombinedValue of(@Nullable Type type, AbstractInsnNode insn) {
-		return of(type, Collections.singleton(insn));
-	}
-
-	@Nullable
-	public static CombinedValue of(@Nullable Type type, Set<AbstractInsnNode> insns) {
-		if (type != null && type.getSort() == Type.VOID && insns.size() == 1 && insns.contains(PREFILLED))
+	public static CombinedValue of(@Nullable Type type, InsnSources sources) {
+		if (type != null && type.getSort() == Type.VOID && sources == InsnSources.PREFILLED)
 			return null;
-		if (!insns.isEmpty())
-			return new CombinedValue(type, insns);
+		if (!sources.isEmpty())
+			return new CombinedValue(type, sources);
 		if (type == null)
 			return CombinedValue.UNINITIALIZED_VALUE;
 		switch (type.getSort()) {
@@ -95,7 +88,7 @@ public class CombinedValue implements Value, Opcodes {
 				return CombinedValue.DOUBLE_VALUE;
 			case Type.ARRAY:
 			case Type.OBJECT:
-				return type.getInternalName().equals("java/lang/Object") ? CombinedValue.REFERENCE_VALUE : new CombinedValue(type, insns);
+				return type.getInternalName().equals("java/lang/Object") ? CombinedValue.REFERENCE_VALUE : new CombinedValue(type, sources);
 			default:
 				throw new IllegalArgumentException("Unhandled type" + type.getSort() + " " + type);
 		}
@@ -118,14 +111,20 @@ public class CombinedValue implements Value, Opcodes {
 		return type != null;
 	}
 
+	/**
+	 * @return the instructions that can produce this value
+	 */
+	public Set<AbstractInsnNode> getInsns() {
+		return sources.toSet();
+	}
+
 	@Nullable
 	public Object getConstantValue() {
-		val iterator = insns.iterator();
-		if (!iterator.hasNext())
+		if (sources.isEmpty())
 			return IntermediateValue.UNKNOWN;
-		Object value = AsmInstructions.getConstant(iterator.next());
-		while (iterator.hasNext()) {
-			Object newValue = AsmInstructions.getConstant(iterator.next());
+		Object value = AsmInstructions.getConstant(sources.get(0));
+		for (int i = 1; i < sources.size(); i++) {
+			Object newValue = AsmInstructions.getConstant(sources.get(i));
 			if (!Objects.equals(newValue, value))
 				return IntermediateValue.UNKNOWN;
 		}
@@ -142,10 +141,10 @@ public class CombinedValue implements Value, Opcodes {
 
 	@Override
 	public String toString() {
-		return "type: " + getDescriptor() + " " + insns;
+		return "type: " + getDescriptor() + " " + sources;
 	}
 
 	public boolean isPrefilled() {
-		return insns != null && insns.contains(CombinedValue.PREFILLED);
+		return sources.isPrefilled();
 	}
 }
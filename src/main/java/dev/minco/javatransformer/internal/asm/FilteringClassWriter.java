@@ -5,18 +5,37 @@ import java.util.Map;
 
 import lombok.val;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 
 public class FilteringClassWriter extends ClassWriter {
 	public final Map<String, String> filters = new HashMap<>();
+	@Nullable
+	private final ClassPathTypeHierarchy typeHierarchy;
 
 	public FilteringClassWriter(int flags) {
-		super(flags);
+		this(flags, null);
 	}
 
 	public FilteringClassWriter(ClassReader classReader, int flags) {
+		this(classReader, flags, null);
+	}
+
+	/**
+	 * @param typeHierarchy used to compute frames without loading classes, if not null
+	 */
+	public FilteringClassWriter(int flags, @Nullable ClassPathTypeHierarchy typeHierarchy) {
+		super(flags);
+		this.typeHierarchy = typeHierarchy;
+	}
+
+	/**
+	 * @param typeHierarchy used to compute frames without loading classes, if not null
+	 */
+	public FilteringClassWriter(ClassReader classReader, int flags, @Nullable ClassPathTypeHierarchy typeHierarchy) {
 		super(classReader, flags);
+		this.typeHierarchy = typeHierarchy;
 	}
 
 	public static void addFilter(Map<String, String> filters, String a, String b) {
@@ -74,6 +93,9 @@ public class FilteringClassWriter extends ClassWriter {
 
 	@Override
 	protected String getCommonSuperClass(final String a, final String b) {
+		if (typeHierarchy != null)
+			return typeHierarchy.getCommonSuperClass(a, b);
+
 		if ((a.indexOf('.') != -1 && !a.startsWith("java.")) || (b.indexOf('.') != -1 && !b.startsWith("java.")))
 			throw new UnsupportedOperationException();
 
@@ -0,0 +1,119 @@
+package dev.minco.javatransformer.internal.asm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+
+/**
+ * Immutable set of the instructions which can produce a {@link CombinedValue}, stored as their indexes in the analysed method
+ *
+ * Most values have a single source, so {@link CombinedInterpreter} shares one instance per instruction,
+ * and {@link #union} returns one of its arguments instead of a new set whenever it can.
+ */
+public final class InsnSources {
+	private static final int PREFILLED_INDEX = -1;
+	private static final int POPPED_FROM_BOTTOM_INDEX = -2;
+	public static final InsnSources EMPTY = new InsnSources(new int[0], null);
+	public static final InsnSources PREFILLED = new InsnSources(new int[]{PREFILLED_INDEX}, null);
+	public static final InsnSources POPPED_FROM_BOTTOM = new InsnSources(new int[]{POPPED_FROM_BOTTOM_INDEX}, null);
+
+	// sorted, without duplicates
+	private final int[] indexes;
+	// the analysed method's instructions at the time of the analysis, so later changes to the method don't change which are returned
+	@Nullable
+	private final AbstractInsnNode[] instructions;
+
+	private InsnSources(int[] indexes, @Nullable AbstractInsnNode[] instructions) {
+		this.indexes = indexes;
+		this.instructions = instructions;
+	}
+
+	static InsnSources of(int index, AbstractInsnNode[] instructions) {
+		return new InsnSources(new int[]{index}, instructions);
+	}
+
+	public static InsnSources union(InsnSources a, InsnSources b) {
+		if (a == b || b.indexes.length == 0)
+			return a;
+		if (a.indexes.length == 0)
+			return b;
+
+		val merged = new int[a.indexes.length + b.indexes.length];
+		int i = 0, j = 0, size = 0;
+		while (i < a.indexes.length && j < b.indexes.length) {
+			val x = a.indexes[i];
+			val y = b.indexes[j];
+			if (x <= y)
+				i++;
+			if (y <= x)
+				j++;
+			merged[size++] = Math.min(x, y);
+		}
+		while (i < a.indexes.length)
+			merged[size++] = a.indexes[i++];
+		while (j < b.indexes.length)
+			merged[size++] = b.indexes[j++];
+
+		if (size == a.indexes.length)
+			return a;
+		if (size == b.indexes.length)
+			return b;
+		// sets from different analyses of a method only share the instructions before the first change,
+		// and any set with a later index than that comes from the latest analysis
+		val instructions = a.indexes[a.indexes.length - 1] >= b.indexes[b.indexes.length - 1] ? a.instructions : b.instructions;
+		return new InsnSources(Arrays.copyOf(merged, size), instructions);
+	}
+
+	public int size() {
+		return indexes.length;
+	}
+
+	public boolean isEmpty() {
+		return indexes.length == 0;
+	}
+
+	public boolean isPrefilled() {
+		return Arrays.binarySearch(indexes, PREFILLED_INDEX) >= 0;
+	}
+
+	public AbstractInsnNode get(int i) {
+		val index = indexes[i];
+		if (index == PREFILLED_INDEX)
+			return CombinedValue.PREFILLED;
+		if (index == POPPED_FROM_BOTTOM_INDEX)
+			return CombinedValue.POPPED_FROM_BOTTOM;
+		// only sets which contain a real instruction have any, as they come from CombinedInterpreter
+		//noinspection ConstantConditions
+		return instructions[index];
+	}
+
+	public Set<AbstractInsnNode> toSet() {
+		if (indexes.length == 0)
+			return Collections.emptySet();
+		val set = new LinkedHashSet<AbstractInsnNode>(indexes.length * 2);
+		for (int i = 0; i < indexes.length; i++)
+			set.add(get(i));
+		return set;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o == this || (o instanceof InsnSources && Arrays.equals(indexes, ((InsnSources) o).indexes));
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(indexes);
+	}
+
+	@Override
+	public String toString() {
+		return toSet().toString();
+	}
+}
@@ -2,6 +2,9 @@ package dev.minco.javatransformer.internal.javaparser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
 
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.TypeDeclaration;
@@ -11,19 +14,30 @@ import dev.minco.javatransformer.internal.SourceInfo;
 
 public final class CompilationUnitInfo {
 	public static List<SourceInfo> getSourceInfos(CompilationUnit compilationUnit, ClassPath classPath) {
+		return getSourceInfos(compilationUnit, classPath, null);
+	}
+
+	/**
+	 * @param fullCompilationUnit the same source parsed with bodies, if they were stripped from compilationUnit
+	 */
+	public static List<SourceInfo> getSourceInfos(CompilationUnit compilationUnit, ClassPath classPath, @Nullable Supplier<CompilationUnit> fullCompilationUnit) {
 		List<SourceInfo> sourceInfos = new ArrayList<>();
 		String packageName = compilationUnit.getPackageDeclaration().map(it -> it.getNameAsString() + '.').orElse("");
-		getSourceInfos(compilationUnit.getTypes(), classPath, sourceInfos, packageName);
+		getSourceInfos(compilationUnit.getTypes(), classPath, fullCompilationUnit, sourceInfos, packageName);
 		return sourceInfos;
 	}
 
-	@SuppressWarnings({"unchecked", "deprecation"})
 	public static void getSourceInfos(Iterable<TypeDeclaration<?>> typeDeclarations, ClassPath classPath, List<SourceInfo> sourceInfos, String packageName) {
+		getSourceInfos(typeDeclarations, classPath, null, sourceInfos, packageName);
+	}
+
+	@SuppressWarnings({"unchecked", "deprecation"})
+	private static void getSourceInfos(Iterable<TypeDeclaration<?>> typeDeclarations, ClassPath classPath, @Nullable Supplier<CompilationUnit> fullCompilationUnit, List<SourceInfo> sourceInfos, String packageName) {
 		for (TypeDeclaration<?> typeDeclaration : typeDeclarations) {
-			sourceInfos.add(new SourceInfo(() -> typeDeclaration, packageName + typeDeclaration.getName(), classPath));
+			sourceInfos.add(new SourceInfo(() -> typeDeclaration, packageName + typeDeclaration.getName(), classPath, fullCompilationUnit));
 			// suppressed deprecation warning for now
 			// https://github.com/javaparser/javaparser/issues/1472#issuecomment-424327421
-			getSourceInfos(typeDeclaration.getChildNodesByType((Class<TypeDeclaration<?>>) (Object) TypeDeclaration.class), classPath, sourceInfos, packageName + typeDeclaration.getNameAsString() + '$');
+			getSourceInfos(typeDeclaration.getChildNodesByType((Class<TypeDeclaration<?>>) (Object) TypeDeclaration.class), classPath, fullCompilationUnit, sourceInfos, packageName + typeDeclaration.getNameAsString() + '$');
 		}
 	}
 }
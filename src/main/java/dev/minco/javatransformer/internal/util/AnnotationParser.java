@@ -36,7 +36,7 @@ public final class AnnotationParser {
 	}
 
 	public static Annotation annotationFromAnnotationNode(AnnotationNode annotationNode) {
-		return Annotation.of(new Type(annotationNode.desc), getAnnotationNodeValues(annotationNode));
+		return Annotation.of(Type.ofDescriptor(annotationNode.desc), getAnnotationNodeValues(annotationNode));
 	}
 
 	private static Map<String, Object> getAnnotationNodeValues(AnnotationNode annotationNode) {
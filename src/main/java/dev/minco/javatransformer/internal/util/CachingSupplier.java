@@ -14,7 +14,7 @@ import org.jetbrains.annotations.Nullable;
 public final class CachingSupplier<T> implements Supplier<T> {
 	@NonNull
 	private final Supplier<T> wrapped;
-	private transient T value;
+	private transient volatile T value;
 
 	private CachingSupplier(@NonNull Supplier<T> wrapped) {
 		this.wrapped = wrapped;
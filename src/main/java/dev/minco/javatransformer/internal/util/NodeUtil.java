@@ -7,12 +7,18 @@ import java.util.function.Function;
 
 import lombok.val;
 
+import org.jetbrains.annotations.Nullable;
+
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.expr.LambdaExpr;
 import com.github.javaparser.ast.expr.Name;
 import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.nodeTypes.NodeWithTypeParameters;
+import com.github.javaparser.ast.stmt.BlockStmt;
 import com.github.javaparser.ast.type.TypeParameter;
 
 public final class NodeUtil {
@@ -30,6 +36,58 @@ public final class NodeUtil {
 		}
 	}
 
+	/**
+	 * Replaces every method, constructor and initializer body with an empty block, leaving only declarations.
+	 * Methods without a body, such as abstract methods, are left without one.
+	 */
+	public static void stripBodies(Node node) {
+		forChildren(node, it -> {
+			if (it instanceof MethodDeclaration) {
+				val method = (MethodDeclaration) it;
+				if (method.getBody().isPresent())
+					method.setBody(new BlockStmt());
+			} else if (it instanceof ConstructorDeclaration) {
+				((ConstructorDeclaration) it).setBody(new BlockStmt());
+			} else if (it instanceof InitializerDeclaration) {
+				((InitializerDeclaration) it).setBody(new BlockStmt());
+			}
+		});
+	}
+
+	/**
+	 * Finds the node at the same position as the given node, in another tree parsed from the same source
+	 *
+	 * @return the matching node, or null if the trees differ on the way to it
+	 */
+	@Nullable
+	public static Node findSamePosition(Node node, Node otherRoot) {
+		val path = new ArrayList<Integer>();
+		Node current = node;
+		while (current.getParentNode().isPresent()) {
+			val parent = current.getParentNode().get();
+			path.add(indexOf(parent.getChildNodes(), current));
+			current = parent;
+		}
+
+		Node other = otherRoot;
+		for (int i = path.size() - 1; i >= 0; i--) {
+			val children = other.getChildNodes();
+			val index = path.get(i);
+			if (index < 0 || index >= children.size())
+				return null;
+			other = children.get(index);
+		}
+		return other.getClass() == node.getClass() ? other : null;
+	}
+
+	// Node.equals compares structure, so identical siblings would be confused by List.indexOf
+	private static int indexOf(List<Node> nodes, Node node) {
+		for (int i = 0; i < nodes.size(); i++)
+			if (nodes.get(i) == node)
+				return i;
+		return -1;
+	}
+
 	public static <ResultType> List<ResultType> getFromList(Node node, Function<Node, List<ResultType>> getter) {
 		List<ResultType> parameters = new ArrayList<>();
 
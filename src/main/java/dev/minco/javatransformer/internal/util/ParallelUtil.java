@@ -0,0 +1,70 @@
+package dev.minco.javatransformer.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+public final class ParallelUtil {
+	/**
+	 * Applies mapper to consecutive chunks of items, using the executor as well as the calling thread.
+	 *
+	 * The calling thread takes chunks itself and only waits for chunks which are already running elsewhere,
+	 * so this can't deadlock when called from a task running on a fully busy executor.
+	 *
+	 * @param executor executor to spread chunks over, or null to map every chunk on the calling thread
+	 * @return the result for each chunk, in the same order as the chunks
+	 */
+	@SneakyThrows
+	public static <T, R> List<R> mapChunks(List<T> items, int chunkSize, @Nullable Executor executor, Function<List<T>, R> mapper) {
+		val chunks = (items.size() + chunkSize - 1) / chunkSize;
+		val results = new AtomicReferenceArray<R>(chunks);
+		val next = new AtomicInteger();
+		val remaining = new CountDownLatch(chunks);
+		val failure = new AtomicReference<Throwable>();
+		Runnable worker = () -> {
+			int chunk;
+			while ((chunk = next.getAndIncrement()) < chunks) {
+				try {
+					if (failure.get() == null)
+						results.set(chunk, mapper.apply(items.subList(chunk * chunkSize, Math.min(items.size(), (chunk + 1) * chunkSize))));
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				} finally {
+					remaining.countDown();
+				}
+			}
+		};
+
+		if (executor != null) {
+			val helpers = Math.min(chunks, Runtime.getRuntime().availableProcessors()) - 1;
+			try {
+				for (int i = 0; i < helpers; i++)
+					executor.execute(worker);
+			} catch (RejectedExecutionException ignored) {
+				// the calling thread takes any chunks left over
+			}
+		}
+		worker.run();
+		remaining.await();
+
+		val t = failure.get();
+		if (t != null)
+			throw t;
+
+		val list = new ArrayList<R>(chunks);
+		for (int i = 0; i < chunks; i++)
+			list.add(results.get(i));
+		return list;
+	}
+}
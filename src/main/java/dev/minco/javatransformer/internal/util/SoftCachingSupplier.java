@@ -0,0 +1,47 @@
+package dev.minco.javatransformer.internal.util;
+
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Like {@link CachingSupplier}, but lets the garbage collector drop the cached value when memory is low.
+ * It is then supplied again the next time it is needed, so may not always be the same instance.
+ */
+@ToString
+public final class SoftCachingSupplier<T> implements Supplier<T> {
+	@NonNull
+	private final Supplier<T> wrapped;
+	@ToString.Exclude
+	private transient volatile SoftReference<T> value;
+
+	private SoftCachingSupplier(@NonNull Supplier<T> wrapped) {
+		this.wrapped = wrapped;
+	}
+
+	public static <T> SoftCachingSupplier<T> of(Supplier<T> wrapped) {
+		return new SoftCachingSupplier<>(wrapped);
+	}
+
+	@Override
+	public T get() {
+		SoftReference<T> reference = this.value;
+		T value = reference == null ? null : reference.get();
+
+		if (value == null) {
+			synchronized (this) {
+				reference = this.value;
+				value = reference == null ? null : reference.get();
+				if (value == null) {
+					value = Objects.requireNonNull(wrapped.get());
+					this.value = new SoftReference<>(value);
+				}
+			}
+		}
+
+		return value;
+	}
+}
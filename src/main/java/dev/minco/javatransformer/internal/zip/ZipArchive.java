@@ -0,0 +1,378 @@
+package dev.minco.javatransformer.internal.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Random access reader for a zip file's central directory
+ *
+ * Unlike {@link java.util.zip.ZipFile} this exposes the raw compressed data of each entry so it can be copied into
+ * another zip by {@link ZipArchiveWriter} without being inflated and deflated again.
+ */
+public final class ZipArchive implements Closeable {
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_SIGNATURE = 0x06054b50;
+	static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	static final int ZIP64_EXTRA_ID = 0x0001;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_SIZE = 22;
+	static final int STORED = 0;
+	static final int DEFLATED = 8;
+	static final long MAX_32 = 0xFFFFFFFFL;
+	static final int MAX_16 = 0xFFFF;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	// archives opened by openShared, by normalized path
+	private static final Map<Path, ZipArchive> shared = new HashMap<>();
+
+	private final Path path;
+	private final FileChannel channel;
+	private final List<Entry> entries;
+	@Nullable
+	private volatile Map<String, Entry> entriesByName;
+	// number of unclosed openShared calls returning this archive, guarded by shared
+	private int references;
+
+	private ZipArchive(Path path, FileChannel channel, List<Entry> entries) {
+		this.path = path;
+		this.channel = channel;
+		this.entries = entries;
+	}
+
+	public static ZipArchive open(Path path) throws IOException {
+		val channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new ZipArchive(path, channel, readCentralDirectory(channel));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an archive which is shared with every other caller of this method for the same file, so its central
+	 * directory is only read once and only one file handle is used. The file is closed when each caller has called
+	 * {@link #close()} exactly once.
+	 */
+	public static ZipArchive openShared(Path path) throws IOException {
+		path = path.toAbsolutePath().normalize();
+		synchronized (shared) {
+			ZipArchive archive = shared.get(path);
+			if (archive == null) {
+				archive = open(path);
+				shared.put(path, archive);
+			}
+			archive.references++;
+			return archive;
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		val buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Unexpected end of zip file at " + (position + buffer.position()));
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Checksums a zip's central directory without parsing it. As the central directory contains the name, size and CRC
+	 * of every entry, this changes whenever the contents of the zip do.
+	 */
+	public static long checksumCentralDirectory(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			val centralDirectory = readCentralDirectoryBuffer(channel);
+			val crc = new CRC32();
+			crc.update(centralDirectory.array(), 0, centralDirectory.limit());
+			return crc.getValue();
+		}
+	}
+
+	private static ByteBuffer readCentralDirectoryBuffer(FileChannel channel) throws IOException {
+		val size = channel.size();
+		val tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+		val tail = read(channel, size - tailSize, tailSize);
+
+		int end = -1;
+		for (int i = tailSize - END_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_SIGNATURE) {
+				end = i;
+				break;
+			}
+		}
+		if (end == -1)
+			throw new ZipException("Couldn't find end of central directory record");
+
+		long entryCount = tail.getShort(end + 10) & MAX_16;
+		long centralDirectorySize = tail.getInt(end + 12) & MAX_32;
+		long centralDirectoryOffset = tail.getInt(end + 16) & MAX_32;
+
+		val endPosition = size - tailSize + end;
+		if ((entryCount == MAX_16 || centralDirectorySize == MAX_32 || centralDirectoryOffset == MAX_32) && endPosition >= 20) {
+			val locator = read(channel, endPosition - 20, 20);
+			if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+				val zip64End = read(channel, locator.getLong(8), 56);
+				if (zip64End.getInt(0) != ZIP64_END_SIGNATURE)
+					throw new ZipException("Invalid zip64 end of central directory record");
+				centralDirectorySize = zip64End.getLong(40);
+				centralDirectoryOffset = zip64End.getLong(48);
+			}
+		}
+
+		if (centralDirectorySize > Integer.MAX_VALUE)
+			throw new ZipException("Central directory too large: " + centralDirectorySize);
+
+		return read(channel, centralDirectoryOffset, (int) centralDirectorySize);
+	}
+
+	private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+		val centralDirectory = readCentralDirectoryBuffer(channel);
+		val entries = new ArrayList<Entry>(Math.min(centralDirectory.remaining() / CENTRAL_HEADER_SIZE, 1 << 16));
+		while (centralDirectory.remaining() >= CENTRAL_HEADER_SIZE) {
+			val pos = centralDirectory.position();
+			if (centralDirectory.getInt(pos) != CENTRAL_HEADER_SIGNATURE)
+				throw new ZipException("Invalid central directory header at offset " + pos + " in central directory");
+			val flags = centralDirectory.getShort(pos + 8) & MAX_16;
+			val method = centralDirectory.getShort(pos + 10) & MAX_16;
+			val dosTime = centralDirectory.getInt(pos + 12);
+			val crc = centralDirectory.getInt(pos + 16) & MAX_32;
+			long compressedSize = centralDirectory.getInt(pos + 20) & MAX_32;
+			long uncompressedSize = centralDirectory.getInt(pos + 24) & MAX_32;
+			val nameLength = centralDirectory.getShort(pos + 28) & MAX_16;
+			val extraLength = centralDirectory.getShort(pos + 30) & MAX_16;
+			val commentLength = centralDirectory.getShort(pos + 32) & MAX_16;
+			long localHeaderOffset = centralDirectory.getInt(pos + 42) & MAX_32;
+
+			val nameBytes = new byte[nameLength];
+			centralDirectory.position(pos + CENTRAL_HEADER_SIZE);
+			centralDirectory.get(nameBytes);
+			val name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			// zip64 extra only contains the fields which overflowed, in this order
+			int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+			val extraEnd = extra + extraLength;
+			while (extra + 4 <= extraEnd) {
+				val id = centralDirectory.getShort(extra) & MAX_16;
+				val length = centralDirectory.getShort(extra + 2) & MAX_16;
+				if (id == ZIP64_EXTRA_ID) {
+					int field = extra + 4;
+					if (uncompressedSize == MAX_32) {
+						uncompressedSize = centralDirectory.getLong(field);
+						field += 8;
+					}
+					if (compressedSize == MAX_32) {
+						compressedSize = centralDirectory.getLong(field);
+						field += 8;
+					}
+					if (localHeaderOffset == MAX_32)
+						localHeaderOffset = centralDirectory.getLong(field);
+					break;
+				}
+				extra += 4 + length;
+			}
+
+			entries.add(new Entry(name, flags, method, dosTime, crc, compressedSize, uncompressedSize, localHeaderOffset));
+			centralDirectory.position(extraEnd + commentLength);
+		}
+
+		return Collections.unmodifiableList(entries);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Entries in central directory order
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return The first entry with the given name, or null if there is none
+	 */
+	@Nullable
+	public Entry getEntry(String name) {
+		Map<String, Entry> entriesByName = this.entriesByName;
+		if (entriesByName == null) {
+			entriesByName = new HashMap<>();
+			for (Entry entry : entries)
+				entriesByName.putIfAbsent(entry.name, entry);
+			this.entriesByName = entriesByName;
+		}
+		return entriesByName.get(name);
+	}
+
+	private long getDataOffset(Entry entry) throws IOException {
+		long dataOffset = entry.dataOffset;
+		if (dataOffset == -1) {
+			val header = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+			if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+				throw new ZipException("Invalid local header for " + entry.name + " in " + path);
+			entry.dataOffset = dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & MAX_16) + (header.getShort(28) & MAX_16);
+		}
+		return dataOffset;
+	}
+
+	/**
+	 * Reads and inflates the data of an entry, checking it against the entry's CRC
+	 *
+	 * @param entry Entry from this archive
+	 * @return Uncompressed data
+	 * @throws IOException if reading fails or the entry is corrupt
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		val data = readUnchecked(entry);
+		val crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if (crc.getValue() != entry.crc)
+			throw new ZipException("CRC mismatch for " + entry.name + " in " + path + ": expected " + Long.toHexString(entry.crc) + " but was " + Long.toHexString(crc.getValue()));
+		return data;
+	}
+
+	private byte[] readUnchecked(Entry entry) throws IOException {
+		if (entry.uncompressedSize > Integer.MAX_VALUE - 8 || entry.compressedSize > Integer.MAX_VALUE - 8)
+			throw new ZipException("Entry " + entry.name + " is too large to read into memory");
+
+		val compressed = read(channel, getDataOffset(entry), (int) entry.compressedSize);
+		switch (entry.method) {
+			case STORED:
+				return compressed.array();
+			case DEFLATED:
+				val inflater = new Inflater(true);
+				try {
+					inflater.setInput(compressed.array());
+					val result = new byte[(int) entry.uncompressedSize];
+					int position = 0;
+					while (position < result.length) {
+						val inflated = inflater.inflate(result, position, result.length - position);
+						if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+							throw new ZipException("Truncated deflate data for " + entry.name + " in " + path);
+						position += inflated;
+					}
+					return result;
+				} catch (DataFormatException e) {
+					throw new ZipException("Invalid deflate data for " + entry.name + " in " + path + ": " + e.getMessage());
+				} finally {
+					inflater.end();
+				}
+			default:
+				throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + path);
+		}
+	}
+
+	/**
+	 * @param entry Entry from this archive
+	 * @return Supplier which reads the entry, throwing {@link UncheckedIOException} on failure
+	 */
+	public Supplier<byte[]> supplier(Entry entry) {
+		return () -> {
+			try {
+				return read(entry);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Copies the still compressed data of an entry
+	 *
+	 * @param entry Entry from this archive
+	 * @param os Stream to write to
+	 * @throws IOException if reading or writing fails
+	 */
+	void copyRawData(Entry entry, OutputStream os) throws IOException {
+		val buffer = ByteBuffer.allocate((int) Math.min(entry.compressedSize, 1 << 16));
+		long position = getDataOffset(entry);
+		long remaining = entry.compressedSize;
+		while (remaining > 0) {
+			buffer.clear();
+			if (remaining < buffer.capacity())
+				buffer.limit((int) remaining);
+			val read = channel.read(buffer, position);
+			if (read < 0)
+				throw new EOFException("Unexpected end of zip file reading " + entry.name + " in " + path);
+			os.write(buffer.array(), 0, read);
+			position += read;
+			remaining -= read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (shared) {
+			if (references > 0) {
+				if (--references > 0)
+					return;
+				shared.remove(path);
+			}
+		}
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "ZipArchive{" + path + ", entries.size()=" + entries.size() + '}';
+	}
+
+	public static final class Entry {
+		public final String name;
+		final int flags;
+		final int method;
+		final int dosTime;
+		final long crc;
+		final long compressedSize;
+		final long uncompressedSize;
+		final long localHeaderOffset;
+		private volatile long dataOffset = -1;
+
+		Entry(String name, int flags, int method, int dosTime, long crc, long compressedSize, long uncompressedSize, long localHeaderOffset) {
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.uncompressedSize = uncompressedSize;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		@Override
+		public String toString() {
+			return "Entry{" + name + ", method=" + method + ", size=" + uncompressedSize + ", compressedSize=" + compressedSize + '}';
+		}
+	}
+}
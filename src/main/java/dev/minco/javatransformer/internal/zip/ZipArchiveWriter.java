@@ -0,0 +1,254 @@
+package dev.minco.javatransformer.internal.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import lombok.val;
+
+/**
+ * Writes a zip file, either deflating new data or copying the compressed data of an entry from a {@link ZipArchive}
+ * as is.
+ *
+ * Entries are always written with their sizes and CRC in the local header, so no data descriptors are used.
+ */
+public final class ZipArchiveWriter implements Closeable {
+	private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+	private static final int UTF8_FLAG = 1 << 11;
+	private static final int VERSION_STORED = 10;
+	private static final int VERSION_DEFLATED = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	private final CountingOutputStream os;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	// callers resolve duplicate names before writing, so any which get here are skipped rather than written twice
+	private final Set<String> written = new HashSet<>();
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final byte[] deflateBuffer = new byte[1 << 16];
+	private final int dosTime = toDosTime(LocalDateTime.now());
+	private long entryCount;
+
+	public ZipArchiveWriter(Path path) throws IOException {
+		os = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+
+	private static int toDosTime(LocalDateTime time) {
+		if (time.getYear() < 1980)
+			return (1 << 21) | (1 << 16);
+		return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+
+	private static boolean isAscii(byte[] name) {
+		for (byte b : name)
+			if (b < 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Deflates and writes a new entry
+	 *
+	 * @return false if an entry with this name was already written and this one was skipped
+	 */
+	public boolean write(String name, byte[] data) throws IOException {
+		if (!written.add(name))
+			return false;
+
+		val crc = new CRC32();
+		crc.update(data);
+
+		byte[] compressed;
+		int method;
+		if (data.length == 0) {
+			compressed = data;
+			method = ZipArchive.STORED;
+		} else {
+			compressed = deflate(data);
+			method = ZipArchive.DEFLATED;
+		}
+
+		val nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		writeEntry(nameBytes, isAscii(nameBytes) ? 0 : UTF8_FLAG, method, dosTime, crc.getValue(), compressed.length, data.length);
+		os.write(compressed);
+		return true;
+	}
+
+	/**
+	 * Writes an entry by copying its compressed data, CRC and timestamp from the source archive without inflating it
+	 *
+	 * @return false if an entry with this name was already written and this one was skipped
+	 */
+	public boolean copy(ZipArchive source, ZipArchive.Entry entry) throws IOException {
+		if (!written.add(entry.name))
+			return false;
+
+		writeEntry(entry.name.getBytes(StandardCharsets.UTF_8), entry.flags & ~DATA_DESCRIPTOR_FLAG, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.uncompressedSize);
+		source.copyRawData(entry, os);
+		return true;
+	}
+
+	private byte[] deflate(byte[] data) {
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		val out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+		while (!deflater.finished()) {
+			val length = deflater.deflate(deflateBuffer);
+			out.write(deflateBuffer, 0, length);
+		}
+		return out.toByteArray();
+	}
+
+	private void writeEntry(byte[] name, int flags, int method, int dosTime, long crc, long compressedSize, long uncompressedSize) throws IOException {
+		val offset = os.count;
+		val zip64Sizes = compressedSize >= ZipArchive.MAX_32 || uncompressedSize >= ZipArchive.MAX_32;
+		val zip64Offset = offset >= ZipArchive.MAX_32;
+		val version = zip64Sizes || zip64Offset ? VERSION_ZIP64 : method == ZipArchive.STORED ? VERSION_STORED : VERSION_DEFLATED;
+
+		writeInt(os, ZipArchive.LOCAL_HEADER_SIGNATURE);
+		writeShort(os, version);
+		writeShort(os, flags);
+		writeShort(os, method);
+		writeInt(os, dosTime);
+		writeInt(os, (int) crc);
+		writeInt(os, zip64Sizes ? (int) ZipArchive.MAX_32 : (int) compressedSize);
+		writeInt(os, zip64Sizes ? (int) ZipArchive.MAX_32 : (int) uncompressedSize);
+		writeShort(os, name.length);
+		writeShort(os, zip64Sizes ? 20 : 0);
+		os.write(name);
+		if (zip64Sizes) {
+			writeShort(os, ZipArchive.ZIP64_EXTRA_ID);
+			writeShort(os, 16);
+			writeLong(os, uncompressedSize);
+			writeLong(os, compressedSize);
+		}
+
+		val cd = centralDirectory;
+		val zip64ExtraSize = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+		writeInt(cd, ZipArchive.CENTRAL_HEADER_SIGNATURE);
+		writeShort(cd, version);
+		writeShort(cd, version);
+		writeShort(cd, flags);
+		writeShort(cd, method);
+		writeInt(cd, dosTime);
+		writeInt(cd, (int) crc);
+		writeInt(cd, zip64Sizes ? (int) ZipArchive.MAX_32 : (int) compressedSize);
+		writeInt(cd, zip64Sizes ? (int) ZipArchive.MAX_32 : (int) uncompressedSize);
+		writeShort(cd, name.length);
+		writeShort(cd, zip64ExtraSize == 0 ? 0 : zip64ExtraSize + 4);
+		writeShort(cd, 0);
+		writeShort(cd, 0);
+		writeShort(cd, 0);
+		writeInt(cd, 0);
+		writeInt(cd, zip64Offset ? (int) ZipArchive.MAX_32 : (int) offset);
+		cd.write(name);
+		if (zip64ExtraSize != 0) {
+			writeShort(cd, ZipArchive.ZIP64_EXTRA_ID);
+			writeShort(cd, zip64ExtraSize);
+			if (zip64Sizes) {
+				writeLong(cd, uncompressedSize);
+				writeLong(cd, compressedSize);
+			}
+			if (zip64Offset)
+				writeLong(cd, offset);
+		}
+		entryCount++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			deflater.end();
+			val offset = os.count;
+			val size = centralDirectory.size();
+			centralDirectory.writeTo(os);
+
+			val zip64 = entryCount >= ZipArchive.MAX_16 || offset >= ZipArchive.MAX_32;
+			if (zip64) {
+				val zip64EndOffset = os.count;
+				writeInt(os, ZipArchive.ZIP64_END_SIGNATURE);
+				writeLong(os, 44);
+				writeShort(os, VERSION_ZIP64);
+				writeShort(os, VERSION_ZIP64);
+				writeInt(os, 0);
+				writeInt(os, 0);
+				writeLong(os, entryCount);
+				writeLong(os, entryCount);
+				writeLong(os, size);
+				writeLong(os, offset);
+
+				writeInt(os, ZipArchive.ZIP64_LOCATOR_SIGNATURE);
+				writeInt(os, 0);
+				writeLong(os, zip64EndOffset);
+				writeInt(os, 1);
+			}
+
+			writeInt(os, ZipArchive.END_SIGNATURE);
+			writeShort(os, 0);
+			writeShort(os, 0);
+			writeShort(os, zip64 ? ZipArchive.MAX_16 : (int) entryCount);
+			writeShort(os, zip64 ? ZipArchive.MAX_16 : (int) entryCount);
+			writeInt(os, size);
+			writeInt(os, zip64 ? (int) ZipArchive.MAX_32 : (int) offset);
+			writeShort(os, 0);
+		} finally {
+			os.close();
+		}
+	}
+
+	private static void writeShort(OutputStream os, int value) throws IOException {
+		os.write(value & 0xFF);
+		os.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream os, int value) throws IOException {
+		writeShort(os, value);
+		writeShort(os, value >>> 16);
+	}
+
+	private static void writeLong(OutputStream os, long value) throws IOException {
+		writeInt(os, (int) value);
+		writeInt(os, (int) (value >>> 32));
+	}
+
+	private static final class CountingOutputStream extends OutputStream {
+		private final OutputStream os;
+		long count;
+
+		CountingOutputStream(OutputStream os) {
+			this.os = os;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			os.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			os.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			os.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			os.close();
+		}
+	}
+}
@@ -1,14 +1,33 @@
 package dev.minco.javatransformer.api;
 
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import lombok.val;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dev.minco.javatransformer.internal.SourceInfo;
+import dev.minco.javatransformer.internal.util.StreamUtil;
 
 public class ClassPathTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
 	@Test
 	public void checkAddReturnsCorrectValue() {
 		val classPath = ClassPath.of();
@@ -39,4 +58,219 @@ public class ClassPathTest {
 		}
 		Assert.assertTrue("Should find java.lang.Object in " + classPath, foundObject);
 	}
+
+	@Test
+	public void checkSystemClassesOutsideJavaBase() {
+		val classPath = ClassPath.of();
+		val connection = classPath.getClassInfo("java.sql.Connection");
+		Assert.assertNotNull("Should find java.sql.Connection in " + classPath, connection);
+		Assert.assertTrue(connection.getAccessFlags().has(AccessFlags.ACC_INTERFACE));
+		Assert.assertNotNull(classPath.getClassInfo("java.util.Map$Entry"));
+		Assert.assertNull(classPath.getClassInfo("java.util.DoesNotExist"));
+	}
+
+	private Path makeJar() throws Exception {
+		val jar = folder.getRoot().toPath().resolve("test.jar");
+		try (ZipOutputStream os = new ZipOutputStream(new FileOutputStream(jar.toFile()))) {
+			os.putNextEntry(new ZipEntry("dev/minco/javatransformer/api/ClassPathTest.class"));
+			os.write(StreamUtil.readFully(ClassPathTest.class.getResourceAsStream("ClassPathTest.class")));
+			os.closeEntry();
+		}
+		return jar;
+	}
+
+	@Test
+	public void checkUsableAfterClose() throws Exception {
+		val jar = makeJar();
+		val classPath = ClassPath.of(jar);
+		Assert.assertTrue(classPath.classExists(ClassPathTest.class.getName()));
+		classPath.close();
+		val classInfo = classPath.getClassInfo(ClassPathTest.class.getName());
+		Assert.assertNotNull("Class should be found again after closing", classInfo);
+		Assert.assertEquals(Type.OBJECT, classInfo.getSuperType());
+		classPath.close();
+	}
+
+	@Test
+	public void checkIndexedJar() throws Exception {
+		val jar = makeJar();
+		val indexDirectory = folder.newFolder("index").toPath();
+		System.setProperty("JavaTransformer.classPathIndexDirectory", indexDirectory.toString());
+		try {
+			try (ClassPath classPath = ClassPath.of(jar)) {
+				Assert.assertTrue(classPath.classExists(ClassPathTest.class.getName()));
+			}
+			try (val files = Files.list(indexDirectory)) {
+				Assert.assertEquals("Index should be written when the jar is first loaded", 1, files.count());
+			}
+
+			try (ClassPath classPath = ClassPath.of(jar)) {
+				val classInfo = classPath.getClassInfo(ClassPathTest.class.getName());
+				Assert.assertNotNull(classInfo);
+				Assert.assertEquals(Type.OBJECT, classInfo.getSuperType());
+				Assert.assertTrue(classInfo.getAccessFlags().has(AccessFlags.ACC_PUBLIC));
+				Assert.assertTrue("Members should be read from the jar", classInfo.getMethods().anyMatch(it -> it.getName().equals("checkIndexedJar")));
+
+				classInfo.setName("test.Renamed");
+				classInfo.accessFlags(it -> it.with(AccessFlags.ACC_FINAL));
+				Assert.assertEquals("Changes should be seen through the indexed class", "test.Renamed", classInfo.getName());
+				Assert.assertTrue(classInfo.getAccessFlags().has(AccessFlags.ACC_FINAL));
+			}
+		} finally {
+			System.clearProperty("JavaTransformer.classPathIndexDirectory");
+		}
+	}
+
+	@Test
+	public void checkConcurrentLookups() throws Exception {
+		val jar = makeJar();
+		val executor = Executors.newFixedThreadPool(8);
+		try (ClassPath classPath = ClassPath.of(jar)) {
+			val futures = new ArrayList<Future<ClassInfo>>();
+			for (int i = 0; i < 64; i++)
+				futures.add(executor.submit(() -> classPath.getClassInfo(ClassPathTest.class.getName())));
+			val first = futures.get(0).get();
+			Assert.assertNotNull(first);
+			for (Future<ClassInfo> future : futures)
+				Assert.assertSame("Every lookup should find the same entry", first, future.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void checkPrefetch() throws Exception {
+		val jar = folder.getRoot().toPath().resolve("big.jar");
+		val data = StreamUtil.readFully(ClassPathTest.class.getResourceAsStream("ClassPathTest.class"));
+		try (ZipOutputStream os = new ZipOutputStream(new FileOutputStream(jar.toFile()))) {
+			for (int i = 0; i < 1000; i++) {
+				os.putNextEntry(new ZipEntry("test/Class" + i + ".class"));
+				os.write(data);
+				os.closeEntry();
+			}
+		}
+
+		// fewer threads than chunks, so loading the jar must not wait on chunks queued behind it
+		val executor = Executors.newFixedThreadPool(2);
+		try (ClassPath classPath = ClassPath.of(jar)) {
+			classPath.prefetch(executor).get(30, TimeUnit.SECONDS);
+			for (int i = 0; i < 1000; i++)
+				Assert.assertNotNull(classPath.getClassInfo("test.Class" + i));
+			Assert.assertNull(classPath.getClassInfo("test.Class1000"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void checkLookupDoesNotWaitForQueuedPrefetch() throws Exception {
+		val jar = makeJar();
+		val executor = Executors.newSingleThreadExecutor();
+		val blocked = new CountDownLatch(1);
+		try (ClassPath classPath = ClassPath.of(jar)) {
+			// the only thread is busy, so the prefetch stays queued behind it
+			executor.execute(() -> {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			val prefetch = classPath.prefetch(executor);
+			Assert.assertNotNull("Lookup should load the path itself", classPath.getClassInfo(ClassPathTest.class.getName()));
+			blocked.countDown();
+			prefetch.get(30, TimeUnit.SECONDS);
+		} finally {
+			blocked.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void checkLaterPathsTakePrecedence() throws Exception {
+		val first = folder.newFolder("first").toPath();
+		val second = folder.newFolder("second").toPath();
+		Files.createDirectories(first.resolve("test"));
+		Files.createDirectories(second.resolve("test"));
+		Files.write(first.resolve("test/Dup.java"), "package test; public class Dup { void first() {} }".getBytes(StandardCharsets.UTF_8));
+		Files.write(second.resolve("test/Dup.java"), "package test; public class Dup { void second() {} }".getBytes(StandardCharsets.UTF_8));
+
+		try (ClassPath classPath = ClassPath.of(first, second)) {
+			val classInfo = Objects.requireNonNull(classPath.getClassInfo("test.Dup"));
+			Assert.assertTrue(classInfo.getMethods().anyMatch(it -> it.getName().equals("second")));
+			for (ClassInfo it : classPath)
+				if (it.getName().equals("test.Dup"))
+					Assert.assertTrue(it.getMethods().anyMatch(method -> method.getName().equals("second")));
+		}
+	}
+
+	@Test
+	public void checkInitialPathsAreNormalised() {
+		val classPath = ClassPath.of(Paths.get("./asds/../test"));
+		Assert.assertTrue(classPath.hasPath(Paths.get("test")));
+		Assert.assertFalse("path should not be added successfully", classPath.addPath(Paths.get("test")));
+	}
+
+	@Test
+	public void checkSourcesAreParsedWhenLookedUp() throws Exception {
+		val root = folder.newFolder("sources").toPath();
+		Files.createDirectories(root.resolve("test"));
+		Files.write(root.resolve("test/Outer.java"), "package test; public class Outer { public static class Inner {} }".getBytes(StandardCharsets.UTF_8));
+		// never looked up, so never parsed
+		Files.write(root.resolve("test/Broken.java"), "package test; public class Broken {".getBytes(StandardCharsets.UTF_8));
+
+		try (ClassPath classPath = ClassPath.of(root)) {
+			Assert.assertNotNull(classPath.getClassInfo("test.Outer"));
+			Assert.assertNotNull(classPath.getClassInfo("test.Outer$Inner"));
+			Assert.assertNull(classPath.getClassInfo("test.Outer$Missing"));
+			Assert.assertNull(classPath.getClassInfo("test.Missing"));
+		}
+	}
+
+	@Test
+	public void checkSourceBodiesAreParsedWhenNeeded() throws Exception {
+		val root = folder.newFolder("bodies").toPath();
+		Files.createDirectories(root.resolve("test"));
+		Files.write(root.resolve("test/Bodies.java"), "package test; public class Bodies { public void a() { a(); a(); } }".getBytes(StandardCharsets.UTF_8));
+
+		try (ClassPath classPath = ClassPath.of(root)) {
+			val method = (SourceInfo.MethodDeclarationWrapper) Objects.requireNonNull(classPath.getClassInfo("test.Bodies")).getMethods().findFirst().get();
+			Assert.assertEquals(2, method.getBody().getStatements().size());
+		}
+	}
+
+	@Test
+	public void checkSourceMemberLookup() throws Exception {
+		val root = folder.newFolder("members").toPath();
+		Files.createDirectories(root.resolve("test"));
+		Files.write(root.resolve("test/Members.java"), "package test; public class Members { int f; void a() {} void a(int i) {} }".getBytes(StandardCharsets.UTF_8));
+
+		try (ClassPath classPath = ClassPath.of(root)) {
+			val classInfo = Objects.requireNonNull(classPath.getClassInfo("test.Members"));
+			val a = MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), "a", Parameter.of(Type.INT, "i", null));
+			val renamed = MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), "b", Parameter.of(Type.INT, "i", null));
+
+			Assert.assertNotNull(classInfo.get(FieldInfo.of(new AccessFlags(0), Type.INT, "f")));
+			val found = classInfo.get(a);
+			Assert.assertNotNull(found);
+			Assert.assertEquals(1, found.getParameters().size());
+
+			found.setName("b");
+			Assert.assertNull(classInfo.get(a));
+			Assert.assertNotNull(classInfo.get(renamed));
+
+			classInfo.remove(renamed);
+			Assert.assertNull(classInfo.get(renamed));
+		}
+	}
+
+	@Test
+	public void checkMissesAreForgottenWhenParentChanges() throws Exception {
+		val jar = makeJar();
+		val parent = ClassPath.of();
+		val classPath = ClassPath.of(parent);
+		Assert.assertNull(classPath.getClassInfo(ClassPathTest.class.getName()));
+		parent.addPath(jar);
+		Assert.assertNotNull("Adding a path to a parent should invalidate cached misses", classPath.getClassInfo(ClassPathTest.class.getName()));
+	}
 }
@@ -0,0 +1,197 @@
+package dev.minco.javatransformer.api;
+
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import lombok.val;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavaTransformerParallelTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JavaTransformer makeTransformer() {
+		val transformer = new JavaTransformer();
+		transformer.addTransformer(c -> c.accessFlags(it -> it.makeAccessible(true)));
+		return transformer;
+	}
+
+	private static List<Path> listFiles(Path root) throws Exception {
+		try (Stream<Path> files = Files.walk(root)) {
+			return files.filter(Files::isRegularFile).map(root::relativize).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static Map<String, byte[]> readJar(Path jar) throws Exception {
+		val result = new HashMap<String, byte[]>();
+		try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+			val entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				val entry = entries.nextElement();
+				result.put(entry.getName(), zipFile.getInputStream(entry).readAllBytes());
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testParallelMatchesSequential() throws Exception {
+		val input = JavaTransformer.pathFromClass(JavaTransformerParallelTest.class);
+		val sequential = folder.getRoot().toPath().resolve("sequential");
+		val parallel = folder.getRoot().toPath().resolve("parallel");
+
+		makeTransformer().transform(input, sequential);
+
+		val pool = new ForkJoinPool(4);
+		try {
+			val transformer = makeTransformer();
+			transformer.setExecutor(pool);
+			transformer.transform(input, parallel);
+		} finally {
+			pool.shutdown();
+		}
+
+		val files = listFiles(sequential);
+		Assert.assertFalse("Should have transformed some files", files.isEmpty());
+		Assert.assertEquals(files, listFiles(parallel));
+		for (Path file : files)
+			Assert.assertArrayEquals("Parallel output should match sequential output for " + file, Files.readAllBytes(sequential.resolve(file)), Files.readAllBytes(parallel.resolve(file)));
+	}
+
+	@Test
+	public void testStreamingMatchesSequential() throws Exception {
+		val root = folder.getRoot().toPath();
+		val input = root.resolve("input.jar");
+		new JavaTransformer().transform(JavaTransformer.pathFromClass(JavaTransformerParallelTest.class), input);
+
+		val sequential = root.resolve("sequential.jar");
+		makeTransformer().transform(input, sequential);
+
+		val pool = new ForkJoinPool(4);
+		val streamed = root.resolve("streamed.jar");
+		try {
+			val transformer = makeTransformer();
+			transformer.setExecutor(pool);
+			transformer.setStreaming(true);
+			transformer.setStreamingBufferSize(2);
+			transformer.transform(input, streamed);
+			Assert.assertTrue("Streaming should not store transformed files", transformer.getTransformedFiles().isEmpty());
+		} finally {
+			pool.shutdown();
+		}
+
+		val expected = readJar(sequential);
+		val actual = readJar(streamed);
+		Assert.assertEquals(expected.keySet(), actual.keySet());
+		expected.forEach((name, bytes) -> Assert.assertArrayEquals("Streamed output should match for " + name, bytes, actual.get(name)));
+	}
+
+	@Test
+	public void testUntouchedEntriesAreCopied() throws Exception {
+		val root = folder.getRoot().toPath();
+		val input = root.resolve("input.jar");
+		val resource = "resource.txt";
+		val bytes = "not a class".getBytes(StandardCharsets.UTF_8);
+		try (ZipOutputStream os = new ZipOutputStream(new FileOutputStream(input.toFile()))) {
+			val crc = new CRC32();
+			crc.update(bytes);
+			val entry = new ZipEntry(resource);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(bytes.length);
+			entry.setCrc(crc.getValue());
+			os.putNextEntry(entry);
+			os.write(bytes);
+			os.closeEntry();
+		}
+
+		for (boolean streaming : new boolean[]{false, true}) {
+			val output = root.resolve("output-" + streaming + ".jar");
+			val transformer = makeTransformer();
+			transformer.setStreaming(streaming);
+			transformer.transform(input, output);
+			try (ZipFile zipFile = new ZipFile(output.toFile())) {
+				val entry = zipFile.getEntry(resource);
+				// a recompressed entry would be deflated
+				Assert.assertEquals("Untouched entry should be copied as is, streaming: " + streaming, ZipEntry.STORED, entry.getMethod());
+				Assert.assertArrayEquals(bytes, zipFile.getInputStream(entry).readAllBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testTargetedOnlyJar() throws Exception {
+		val root = folder.getRoot().toPath();
+		val input = root.resolve("input.jar");
+		new JavaTransformer().transform(JavaTransformer.pathFromClass(JavaTransformerParallelTest.class), input);
+
+		val target = JavaTransformerParallelTest.class.getName();
+		val transformer = new JavaTransformer();
+		transformer.addTransformer(target, c -> c.accessFlags(it -> it.with(AccessFlags.ACC_FINAL)));
+		transformer.setStreaming(true);
+		val output = root.resolve("output.jar");
+		transformer.transform(input, output);
+		Assert.assertTrue("Streaming should not store transformed files", transformer.getTransformedFiles().isEmpty());
+
+		val expected = readJar(input);
+		val actual = readJar(output);
+		Assert.assertEquals(expected.keySet(), actual.keySet());
+		val targetName = target.replace('.', '/') + ".class";
+		expected.forEach((name, bytes) -> {
+			if (name.equals(targetName))
+				Assert.assertFalse("Target should have been transformed", Arrays.equals(bytes, actual.get(name)));
+			else
+				Assert.assertArrayEquals("Untargeted entry " + name + " should be unchanged", bytes, actual.get(name));
+		});
+	}
+
+	@Test
+	public void testStreamingKeepsLastDuplicate() throws Exception {
+		val root = folder.getRoot().toPath();
+		val input = root.resolve("input.jar");
+		try (ZipOutputStream os = new ZipOutputStream(new FileOutputStream(input.toFile()))) {
+			val names = new String[]{"dup.txt", "other.txt", "dup.tx_"};
+			val contents = new String[]{"first", "other", "last"};
+			for (int i = 0; i < names.length; i++) {
+				os.putNextEntry(new ZipEntry(names[i]));
+				os.write(contents[i].getBytes(StandardCharsets.UTF_8));
+				os.closeEntry();
+			}
+		}
+		// ZipOutputStream rejects duplicate names, so the last entry is renamed afterwards
+		val bytes = Files.readAllBytes(input);
+		val from = "dup.tx_".getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i + from.length <= bytes.length; i++)
+			if (Arrays.equals(from, Arrays.copyOfRange(bytes, i, i + from.length)))
+				bytes[i + from.length - 1] = 't';
+		Files.write(input, bytes);
+
+		val outputs = new HashMap<Boolean, Map<String, byte[]>>();
+		for (boolean streaming : new boolean[]{false, true}) {
+			val output = root.resolve("output-" + streaming + ".jar");
+			val transformer = makeTransformer();
+			transformer.setStreaming(streaming);
+			transformer.transform(input, output);
+			outputs.put(streaming, readJar(output));
+		}
+		Assert.assertArrayEquals("last".getBytes(StandardCharsets.UTF_8), outputs.get(false).get("dup.txt"));
+		Assert.assertEquals(outputs.get(false).keySet(), outputs.get(true).keySet());
+		outputs.get(false).forEach((name, data) -> Assert.assertArrayEquals("Streamed output should match for " + name, data, outputs.get(true).get(name)));
+	}
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import lombok.val;
@@ -105,4 +106,65 @@ public class JavaTransformerRuntimeTest {
 		Assert.assertEquals(null, System.getProperty("finishedTestAbortEarly"));
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBatchedTransformRuntime() throws Exception {
+		final Path input = JavaTransformer.pathFromClass(JavaTransformerTest.class);
+		final String name = "dev.minco.javatransformer.transform.CodeFragmentTesting";
+		JavaTransformer transformer = new JavaTransformer();
+
+		transformer.addTransformer(name, c -> {
+			val callbackCaller = c.getMethods().filter(method -> method.getName().equals("callbackCaller")).findFirst().get().getCodeFragment();
+			val method = c.getMethods().filter(it -> it.getName().equals("testMethodCallExpression")).findFirst().get();
+			val methodCalls = method.findFragments(CodeFragment.MethodCall.class);
+			Assert.assertEquals(EXPECTED_METHOD_CALL_COUNT, methodCalls.size());
+			method.getCodeFragment().edit(batch -> {
+				for (val call : methodCalls)
+					batch.insert(call, callbackCaller, CodeFragment.InsertionPosition.OVERWRITE);
+				// nothing is changed until the batch is applied, so later fragments are still found
+				Assert.assertEquals(EXPECTED_METHOD_CALL_COUNT, method.findFragments(CodeFragment.MethodCall.class).size());
+			});
+			Assert.assertTrue(method.findFragments(CodeFragment.MethodCall.class).stream().noneMatch(it -> it.getName().equals("println")));
+		});
+
+		transformer.load(input);
+		// defined in a separate class loader, as testTransformRuntime may already have defined the class
+		val clazz = transformer.defineClass(new ClassLoader(getClass().getClassLoader()) {}, name);
+
+		val list = new ArrayList<String>();
+		val instance = clazz.getConstructor(Consumer.class).newInstance((Consumer<String>) list::add);
+		clazz.getMethod("testMethodCallExpression").invoke(instance);
+		Assert.assertEquals(EXPECTED_METHOD_CALL_INPUTS, list);
+	}
+
+	@Test
+	public void testAbortedBatchLeavesMethodUnchanged() throws Exception {
+		final Path input = JavaTransformer.pathFromClass(JavaTransformerTest.class);
+		final String name = "dev.minco.javatransformer.transform.CodeFragmentTesting";
+		JavaTransformer transformer = new JavaTransformer();
+		AtomicBoolean check = new AtomicBoolean(false);
+
+		transformer.addTransformer(name, c -> {
+			val callbackCaller = c.getMethods().filter(method -> method.getName().equals("callbackCaller")).findFirst().get().getCodeFragment();
+			assert callbackCaller != null;
+			val method = (ByteCodeInfo.MethodNodeInfo) c.getMethods().filter(it -> it.getName().equals("testMethodCallExpression")).findFirst().get();
+			val maxLocals = method.node.maxLocals;
+			val instructions = method.node.instructions.size();
+			val call = method.findFragments(CodeFragment.MethodCall.class).get(0);
+			try {
+				method.getCodeFragment().edit(batch -> {
+					batch.insert(call, callbackCaller, CodeFragment.InsertionPosition.OVERWRITE);
+					batch.insert(call, callbackCaller, CodeFragment.InsertionPosition.OVERWRITE);
+				});
+				Assert.fail("Overlapping insertions should be rejected");
+			} catch (TransformationException ignored) {
+				check.set(true);
+			}
+			Assert.assertEquals(maxLocals, method.node.maxLocals);
+			Assert.assertEquals(instructions, method.node.instructions.size());
+		});
+
+		transformer.load(input);
+		Assert.assertTrue(check.get());
+	}
 }
@@ -11,6 +11,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.val;
 
@@ -152,4 +153,27 @@ public class JavaTransformerTest {
 
 		Assert.assertTrue(exists(output.resolve("dev/minco/javatransformer/api/JavaTransformerTest.")));
 	}
+
+	@Test
+	public void testReadOnlyTransformerKeepsOriginalBytes() throws Exception {
+		Path output = folder.newFolder("output").toPath();
+
+		JavaTransformer transformer = new JavaTransformer();
+		transformer.getClassPath().addPaths(extraPaths);
+		transformer.getClassPath().addPaths(Arrays.asList(JavaTransformer.pathFromClass(Assert.class), JavaTransformer.pathFromClass(ClassNode.class), JavaTransformer.pathFromClass(JavaParser.class)));
+		transformer.addTransformer(c -> {
+			c.accessFlags(it -> it);
+			c.getAnnotations();
+			c.getFields().forEach(FieldInfo::getType);
+			c.getMethods().forEach(MethodInfo::getReturnType);
+		});
+		transformer.transform(input, output);
+
+		try (Stream<Path> files = Files.walk(output)) {
+			for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+				val relative = output.relativize(file);
+				Assert.assertArrayEquals("Unmodified " + relative + " should not be rewritten", Files.readAllBytes(input.resolve(relative.toString())), Files.readAllBytes(file));
+			}
+		}
+	}
 }
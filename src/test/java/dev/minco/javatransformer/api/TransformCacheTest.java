@@ -0,0 +1,117 @@
+package dev.minco.javatransformer.api;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.val;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransformCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static JavaTransformer makeTransformer(Path cache, AtomicInteger calls, @Nullable String fingerprint) {
+		val transformer = new JavaTransformer();
+		transformer.setCacheDirectory(cache);
+		transformer.addTransformer(new Transformer() {
+			@Override
+			public void transform(ClassInfo editor) {
+				calls.incrementAndGet();
+				editor.accessFlags(it -> it.makeAccessible(true));
+			}
+
+			@Override
+			public String getFingerprint() {
+				return fingerprint;
+			}
+		});
+		return transformer;
+	}
+
+	@Test
+	public void testCachedResultsSkipTransformers() throws Exception {
+		val root = folder.getRoot().toPath();
+		val cache = root.resolve("cache");
+		val input = JavaTransformer.pathFromClass(TransformCacheTest.class);
+
+		val calls = new AtomicInteger();
+		makeTransformer(cache, calls, "1").transform(input, root.resolve("first"));
+		val firstCalls = calls.get();
+		Assert.assertTrue("Should have transformed some classes", firstCalls > 0);
+
+		makeTransformer(cache, calls, "1").transform(input, root.resolve("second"));
+		Assert.assertEquals("Cached classes should not be transformed again", firstCalls, calls.get());
+		val name = "dev/minco/javatransformer/api/TransformCacheTest.class";
+		Assert.assertArrayEquals(Files.readAllBytes(root.resolve("first").resolve(name)), Files.readAllBytes(root.resolve("second").resolve(name)));
+
+		makeTransformer(cache, calls, "2").transform(input, root.resolve("third"));
+		Assert.assertEquals("Changing the fingerprint should invalidate the cache", firstCalls * 2, calls.get());
+	}
+
+	@Test
+	public void testNoFingerprintIsNotCached() throws Exception {
+		val root = folder.getRoot().toPath();
+		val cache = root.resolve("cache");
+		val input = JavaTransformer.pathFromClass(TransformCacheTest.class);
+
+		val calls = new AtomicInteger();
+		makeTransformer(cache, calls, null).transform(input, root.resolve("first"));
+		val firstCalls = calls.get();
+		makeTransformer(cache, calls, null).transform(input, root.resolve("second"));
+		Assert.assertEquals(firstCalls * 2, calls.get());
+		Assert.assertFalse("Nothing should be cached", Files.exists(cache));
+	}
+
+	@Test
+	public void testClassPathChangesInvalidate() throws Exception {
+		val root = folder.getRoot().toPath();
+		val cache = root.resolve("cache");
+		val input = JavaTransformer.pathFromClass(TransformCacheTest.class);
+		val library = Files.createDirectories(root.resolve("library"));
+
+		val calls = new AtomicInteger();
+		val first = makeTransformer(cache, calls, "1");
+		first.setClassPath(ClassPath.of(library));
+		first.transform(input, root.resolve("first"));
+		val firstCalls = calls.get();
+
+		val second = makeTransformer(cache, calls, "1");
+		second.setClassPath(ClassPath.of(library));
+		second.transform(input, root.resolve("second"));
+		Assert.assertEquals("Cached classes should not be transformed again", firstCalls, calls.get());
+
+		Files.write(library.resolve("Example.class"), new byte[]{1});
+		val third = makeTransformer(cache, calls, "1");
+		third.setClassPath(ClassPath.of(library));
+		third.transform(input, root.resolve("third"));
+		Assert.assertEquals("Changing the classpath should invalidate the cache", firstCalls * 2, calls.get());
+	}
+
+	@Test
+	public void testInputChangesInvalidate() throws Exception {
+		val root = folder.getRoot().toPath();
+		val cache = root.resolve("cache");
+		val input = Files.createDirectories(root.resolve("input"));
+		val name = "dev/minco/javatransformer/api/TransformCacheTest.class";
+		Files.createDirectories(input.resolve(name).getParent());
+		Files.copy(JavaTransformer.pathFromClass(TransformCacheTest.class).resolve(name), input.resolve(name));
+		Files.write(input.resolve("sibling.txt"), new byte[]{1});
+
+		val calls = new AtomicInteger();
+		makeTransformer(cache, calls, "1").transform(input, root.resolve("first"));
+		Assert.assertEquals(1, calls.get());
+		makeTransformer(cache, calls, "1").transform(input, root.resolve("second"));
+		Assert.assertEquals("Cached classes should not be transformed again", 1, calls.get());
+
+		// other files in the input can be seen by transformers and frame computation
+		Files.write(input.resolve("sibling.txt"), new byte[]{1, 2});
+		makeTransformer(cache, calls, "1").transform(input, root.resolve("third"));
+		Assert.assertEquals("Changing another file in the input should invalidate the cache", 2, calls.get());
+	}
+}
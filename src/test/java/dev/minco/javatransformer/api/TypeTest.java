@@ -54,6 +54,20 @@ public class TypeTest {
 		Assert.assertEquals("java.util.Callable", arrayDequeCallable.getTypeArguments().get(0).getClassName());
 	}
 
+	@Test
+	public void testOfDescriptorInterns() {
+		Assert.assertSame(Type.INT, Type.ofDescriptor("I"));
+		Assert.assertSame(Type.STRING, Type.ofDescriptor("Ljava/lang/String;", "Ljava/lang/String;"));
+		Assert.assertSame(Type.ofDescriptor("Ljava/util/List;", "Ljava/util/List<TT;>;"), Type.ofDescriptor("Ljava/util/List;", "Ljava/util/List<TT;>;"));
+
+		// same signature, but a different bound
+		val objectBound = Type.ofDescriptor("Ljava/lang/Object;", "TE;");
+		val numberBound = Type.ofDescriptor("Ljava/lang/Number;", "TE;");
+		Assert.assertEquals("Ljava/lang/Object;", objectBound.descriptor);
+		Assert.assertEquals("Ljava/lang/Number;", numberBound.descriptor);
+		Assert.assertEquals("TE;", numberBound.signature);
+	}
+
 	private void testOf(String in, String expected) {
 		Assert.assertEquals(expected, Type.of(in).descriptor);
 	}
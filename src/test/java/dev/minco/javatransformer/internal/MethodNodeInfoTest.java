@@ -1,17 +1,27 @@
 package dev.minco.javatransformer.internal;
 
+import java.util.Collections;
 import java.util.HashMap;
 
 import lombok.val;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
 
 import dev.minco.javatransformer.api.AccessFlags;
 import dev.minco.javatransformer.api.MethodInfo;
 import dev.minco.javatransformer.api.Parameter;
 import dev.minco.javatransformer.api.Type;
+import dev.minco.javatransformer.api.code.CodeFragment;
+import dev.minco.javatransformer.internal.util.StreamUtil;
 
 public class MethodNodeInfoTest {
 	@Test
@@ -37,4 +47,203 @@ public class MethodNodeInfoTest {
 
 		Assert.assertEquals("(Ljava/lang/String;)Ljava/lang/Boolean;", ((ByteCodeInfo.MethodNodeInfo) info).getDescriptor());
 	}
+
+	@Test
+	public void testWrappersAreCached() throws Exception {
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "test", "()V", null, null));
+		classNode.fields.add(new FieldNode(AccessFlags.ACC_PUBLIC, "test", "I", null, null));
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+
+		val method = b.getMethods().findFirst().get();
+		Assert.assertSame(method, b.getMethods().findFirst().get());
+		Assert.assertSame(b.getFields().findFirst().get(), b.getFields().findFirst().get());
+
+		b.remove(method);
+		b.add(method);
+		Assert.assertNotSame("Removed methods shouldn't keep their wrapper", method, b.getMethods().findFirst().get());
+	}
+
+	@Test
+	public void testMemberLookup() throws Exception {
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "a", "()V", null, null));
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "a", "(I)V", null, null));
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		val a = MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), "a", Parameter.of(Type.INT, "i", null));
+		val renamed = MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), "b", Parameter.of(Type.INT, "i", null));
+
+		val found = b.get(a);
+		Assert.assertNotNull(found);
+		Assert.assertEquals("(I)V", ((ByteCodeInfo.MethodNodeInfo) found).getDescriptor());
+
+		found.setName("b");
+		Assert.assertNull(b.get(a));
+		Assert.assertSame(found, b.get(renamed));
+
+		b.remove(found);
+		Assert.assertNull(b.get(renamed));
+
+		// changes made directly to the node are still found
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "b", "(I)V", null, null));
+		Assert.assertNotNull(b.get(renamed));
+	}
+
+	@Test
+	public void testFindMethodCalls() throws Exception {
+		val method = new MethodNode(AccessFlags.ACC_PUBLIC | AccessFlags.ACC_STATIC, "test", "()V", null, null);
+		method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "test/A", "call", "()V", false));
+		method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "test/B", "call", "()V", false));
+		method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "test/A", "other", "()V", false));
+		method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "test/A", "call", "(I)V", false));
+		method.instructions.add(new InsnNode(Opcodes.RETURN));
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(method);
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		val body = ((ByteCodeInfo.MethodNodeInfo) b.getMethods().findFirst().get()).getCodeFragment();
+
+		val calls = body.findFragments(CodeFragment.MethodCall.class);
+		Assert.assertEquals(4, calls.size());
+		Assert.assertEquals("other", calls.get(2).getName());
+		Assert.assertEquals("(I)V", calls.get(3).getDescriptor());
+
+		val named = body.findMethodCalls(null, "call", null);
+		Assert.assertEquals(3, named.size());
+		Assert.assertSame(calls.get(0), named.get(0));
+		Assert.assertSame(calls.get(3), named.get(2));
+
+		val owned = body.findMethodCalls(new Type("Ltest/A;"), "call", "()V");
+		Assert.assertEquals(1, owned.size());
+		Assert.assertSame(calls.get(0), owned.get(0));
+		Assert.assertEquals(3, body.findMethodCalls(new Type("Ltest/A;"), null, null).size());
+
+		method.instructions.remove(method.instructions.getFirst());
+		((ByteCodeInfo.MethodNodeInfo) b.getMethods().findFirst().get()).markCodeDirty();
+		Assert.assertEquals(2, body.findMethodCalls(null, "call", null).size());
+	}
+
+	@Test
+	public void testFindFieldAccessesAndNew() throws Exception {
+		val method = new MethodNode(AccessFlags.ACC_PUBLIC | AccessFlags.ACC_STATIC, "test", "()Ljava/lang/Object;", null, null);
+		method.instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, "test/A", "a", "I"));
+		method.instructions.add(new FieldInsnNode(Opcodes.PUTSTATIC, "test/B", "b", "I"));
+		method.instructions.add(new TypeInsnNode(Opcodes.NEW, "test/C"));
+		method.instructions.add(new InsnNode(Opcodes.ARETURN));
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(method);
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		val body = ((ByteCodeInfo.MethodNodeInfo) b.getMethods().findFirst().get()).getCodeFragment();
+
+		val loads = body.findFragments(CodeFragment.FieldLoad.class);
+		Assert.assertEquals(1, loads.size());
+		Assert.assertEquals("a", loads.get(0).getName());
+		Assert.assertEquals("Ltest/A;", loads.get(0).getContainingClassType().descriptor);
+
+		val stores = body.findFragments(CodeFragment.FieldStore.class);
+		Assert.assertEquals(1, stores.size());
+		Assert.assertEquals("b", stores.get(0).getName());
+
+		val accesses = body.findFragments(CodeFragment.FieldAccess.class);
+		Assert.assertEquals(2, accesses.size());
+		Assert.assertSame(loads.get(0), accesses.get(0));
+		Assert.assertSame(stores.get(0), accesses.get(1));
+
+		Assert.assertEquals(1, body.findFragments(CodeFragment.New.class).size());
+		Assert.assertEquals(1, body.findFragments(CodeFragment.Return.class).size());
+		Assert.assertEquals(Collections.singletonList(loads.get(0)), loads.get(0).findFragments(CodeFragment.FieldAccess.class));
+	}
+
+	@Test
+	public void testDirectChangesMarkModified() throws Exception {
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "test", "()V", null, null));
+
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		b.getMethods().forEach(MethodInfo::getName);
+		Assert.assertFalse(b.isModified());
+		val hashCode = b.hashCode();
+		val node = b.getNode();
+		Assert.assertTrue("Handing out the node should mark the class as modified", b.isModified());
+		Assert.assertEquals("Being modified shouldn't change the hash code", hashCode, b.hashCode());
+		node.get().access |= AccessFlags.ACC_FINAL;
+
+		val controlFlow = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		controlFlow.hasChangedMethodControlFlow = true;
+		Assert.assertTrue(controlFlow.isModified());
+
+		val method = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		((ByteCodeInfo.MethodNodeInfo) method.getMethods().findFirst().get()).markModified();
+		Assert.assertTrue(method.isModified());
+	}
+
+	@Test
+	public void testMethodsHandedOutMayBeModified() throws Exception {
+		val looked = new MethodNode(AccessFlags.ACC_PUBLIC, "looked", "()V", null, null);
+		val untouched = new MethodNode(AccessFlags.ACC_PUBLIC, "untouched", "()V", null, null);
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(looked);
+		classNode.methods.add(untouched);
+		val like = MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), "looked");
+
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		Assert.assertFalse(b.isMethodModified(looked));
+		// its node can be changed without going through the wrapper
+		((ByteCodeInfo.MethodNodeInfo) b.get(like)).node.instructions.add(new InsnNode(Opcodes.RETURN));
+		Assert.assertTrue(b.isMethodModified(looked));
+		Assert.assertFalse(b.isMethodModified(untouched));
+
+		b.getNode();
+		Assert.assertTrue("Every method may be changed once the class node is handed out", b.isMethodModified(untouched));
+	}
+
+	@Test
+	public void testMembersChangedThroughNodeAreFound() throws Exception {
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "a", "()V", null, null));
+		classNode.methods.add(new MethodNode(AccessFlags.ACC_PUBLIC, "b", "()V", null, null));
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		Assert.assertNotNull(b.get(like("a")));
+
+		b.getNode().get().methods.get(0).name = "c";
+		Assert.assertNull(b.get(like("a")));
+		Assert.assertNotNull(b.get(like("c")));
+
+		b.getNode().get().methods.set(1, new MethodNode(AccessFlags.ACC_PUBLIC, "d", "()V", null, null));
+		Assert.assertNull(b.get(like("b")));
+		Assert.assertNotNull(b.get(like("d")));
+
+		b.remove(like("d"));
+		Assert.assertNull(b.get(like("d")));
+		Assert.assertEquals(1, classNode.methods.size());
+	}
+
+	private static MethodInfo like(String name) {
+		return MethodInfo.of(new AccessFlags(0), Collections.emptyList(), new Type("V"), name);
+	}
+
+	@Test
+	public void testClassPathMethodsReadCode() throws Exception {
+		val bytes = StreamUtil.readFully(MethodNodeInfoTest.class.getResourceAsStream("MethodNodeInfoTest.class"));
+		val stub = ClassPaths.classInfo("dev.minco.javatransformer.internal.MethodNodeInfoTest", () -> bytes);
+		val like = MethodInfo.of(new AccessFlags(AccessFlags.ACC_PUBLIC), Collections.emptyList(), new Type("V"), "testWrap");
+		val method = (ByteCodeInfo.MethodNodeInfo) stub.get(like);
+		Assert.assertNotNull(method);
+		Assert.assertEquals("Classpath classes are read without code", 0, method.node.instructions.size());
+
+		Assert.assertFalse(method.getCodeFragment().findFragments(CodeFragment.MethodCall.class).isEmpty());
+		Assert.assertNotEquals(0, ((ByteCodeInfo.MethodNodeInfo) method.clone()).node.instructions.size());
+
+		val classNode = new ClassNode();
+		classNode.name = "test/Test";
+		val b = new ByteCodeInfo(() -> classNode, "test.Test", new HashMap<>());
+		b.add(method);
+		Assert.assertNotEquals("Copied methods should keep their code", 0, classNode.methods.get(0).instructions.size());
+	}
 }
@@ -0,0 +1,60 @@
+package dev.minco.javatransformer.internal.asm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import lombok.val;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import dev.minco.javatransformer.internal.util.StreamUtil;
+
+public class AsmUtilTest {
+	private static byte[] getBytes(Class<?> clazz) {
+		return StreamUtil.readFully(clazz.getResourceAsStream(clazz.getSimpleName() + ".class"));
+	}
+
+	@Test
+	public void testWriteClassCopiesUnmodifiedMethods() {
+		val holder = new AsmUtil.Holder<ClassReader>();
+		val node = AsmUtil.getClassNode(getBytes(ClassReader.class), holder);
+		val originalMethods = new ArrayList<MethodNode>(node.methods);
+
+		val modified = node.methods.stream().filter(it -> it.name.equals("readInt")).findFirst().get();
+		modified.instructions.insert(new InsnNode(Opcodes.NOP));
+		val removed = node.methods.remove(node.methods.size() - 1);
+		val added = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "added", "()V", null, null);
+		added.instructions.add(new InsnNode(Opcodes.RETURN));
+		node.methods.add(added);
+
+		val bytes = AsmUtil.writeClass(holder.value, node, originalMethods, it -> it == modified, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES, Collections.emptyMap(), null);
+
+		val result = new ClassNode();
+		new ClassReader(bytes).accept(result, 0);
+		Assert.assertEquals(node.methods.stream().map(it -> it.name + it.desc).collect(Collectors.toList()), result.methods.stream().map(it -> it.name + it.desc).collect(Collectors.toList()));
+		Assert.assertFalse(result.methods.stream().anyMatch(it -> it.name.equals(removed.name) && it.desc.equals(removed.desc)));
+		val resultModified = result.methods.stream().filter(it -> it.name.equals("readInt")).findFirst().get();
+		AbstractInsnNode first = resultModified.instructions.getFirst();
+		while (first.getOpcode() < 0)
+			first = first.getNext();
+		Assert.assertEquals(Opcodes.NOP, first.getOpcode());
+	}
+
+	@Test
+	public void testStubClassNodeHasNoCode() {
+		val node = AsmUtil.getStubClassNode(getBytes(ClassReader.class));
+		Assert.assertEquals("java/lang/Object", node.superName);
+		Assert.assertTrue(node.methods.stream().anyMatch(it -> it.name.equals("readInt")));
+		for (MethodNode method : node.methods)
+			Assert.assertEquals(0, method.instructions.size());
+	}
+}
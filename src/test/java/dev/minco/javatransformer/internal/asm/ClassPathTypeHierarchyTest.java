@@ -0,0 +1,31 @@
+package dev.minco.javatransformer.internal.asm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.minco.javatransformer.api.ClassPath;
+import dev.minco.javatransformer.api.TransformationException;
+
+public class ClassPathTypeHierarchyTest {
+	private final ClassPathTypeHierarchy hierarchy = new ClassPathTypeHierarchy(ClassPath.of());
+
+	@Test
+	public void testCommonSuperClass() {
+		Assert.assertEquals("java/lang/Number", hierarchy.getCommonSuperClass("java/lang/Integer", "java/lang/Long"));
+		Assert.assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+		Assert.assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/AbstractList", "java/util/ArrayList"));
+		Assert.assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("java/lang/String", "java/lang/Integer"));
+	}
+
+	@Test
+	public void testInterfaces() {
+		Assert.assertEquals("java/util/List", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/List"));
+		Assert.assertEquals("java/util/Collection", hierarchy.getCommonSuperClass("java/util/Collection", "java/util/List"));
+		Assert.assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("java/lang/Runnable", "java/lang/Integer"));
+	}
+
+	@Test(expected = TransformationException.class)
+	public void testMissingClass() {
+		hierarchy.getCommonSuperClass("java/lang/Integer", "does/not/Exist");
+	}
+}
@@ -0,0 +1,100 @@
+package dev.minco.javatransformer.internal.asm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.val;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import dev.minco.javatransformer.internal.util.StreamUtil;
+
+public class CombinedAnalyzerTest {
+	private static List<String> describe(CombinedAnalyzer.Frame<CombinedValue>[] frames) {
+		val described = new ArrayList<String>();
+		for (val frame : frames) {
+			if (frame == null) {
+				described.add(null);
+				continue;
+			}
+			val sb = new StringBuilder();
+			for (int i = 0; i < frame.getLocals(); i++)
+				sb.append(frame.getLocal(i)).append(", ");
+			sb.append("| ");
+			for (int i = 0; i < frame.getStackSize(); i++)
+				sb.append(frame.getStack(i)).append(", ");
+			described.add(sb.toString());
+		}
+		return described;
+	}
+
+	@Test
+	public void testReanalysisReusesUnchangedFrames() throws Exception {
+		val method = new MethodNode(Opcodes.ACC_STATIC, "calls", "(I)I", null, null);
+		method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+		for (int i = 0; i < 50; i++)
+			method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "Example", "call", "(I)I", false));
+		method.instructions.add(new InsnNode(Opcodes.IRETURN));
+		method.maxLocals = 1;
+		method.maxStack = 1;
+
+		val previous = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, null, 0);
+		method.instructions.insertBefore(method.instructions.get(20), new InsnNode(Opcodes.NOP));
+		val reanalysed = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, previous, 20);
+
+		for (int i = 0; i < 20; i++)
+			Assert.assertSame(previous.frames[i], reanalysed.frames[i]);
+		val full = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, null, 0);
+		Assert.assertEquals(describe(full.frames), describe(reanalysed.frames));
+	}
+
+	@Test
+	public void testReanalysisReusesFramesWhenLocalsGrow() throws Exception {
+		val method = new MethodNode(Opcodes.ACC_STATIC, "calls", "(I)I", null, null);
+		method.instructions.add(new VarInsnNode(Opcodes.ILOAD, 0));
+		for (int i = 0; i < 50; i++)
+			method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "Example", "call", "(I)I", false));
+		method.instructions.add(new InsnNode(Opcodes.IRETURN));
+		method.maxLocals = 1;
+		method.maxStack = 1;
+
+		val previous = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, null, 0);
+		// spills the value to a new local and loads it back, as an insertion does
+		val at = method.instructions.get(20);
+		method.instructions.insertBefore(at, new VarInsnNode(Opcodes.ISTORE, 1));
+		method.instructions.insertBefore(at, new VarInsnNode(Opcodes.ILOAD, 1));
+		method.maxLocals = 2;
+		method.maxStack = 2;
+		val reanalysed = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, previous, 20);
+
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals(2, reanalysed.frames[i].getLocals());
+			Assert.assertSame(previous.frames[i].getLocal(0), reanalysed.frames[i].getLocal(0));
+		}
+		val full = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), "Example", method, null, 0);
+		Assert.assertEquals(describe(full.frames), describe(reanalysed.frames));
+	}
+
+	@Test
+	public void testReanalysisMatchesFullAnalysis() throws Exception {
+		val node = AsmUtil.getClassNode(StreamUtil.readFully(ClassReader.class.getResourceAsStream("ClassReader.class")), null);
+		for (MethodNode method : node.methods) {
+			if (method.instructions.size() < 100)
+				continue;
+			val previous = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), node.name, method, null, 0);
+			val changedIndex = method.instructions.size() / 2;
+			method.instructions.insertBefore(method.instructions.get(changedIndex), new InsnNode(Opcodes.NOP));
+
+			val reanalysed = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), node.name, method, previous, changedIndex);
+			val full = CombinedAnalyzer.analyze(new CombinedInterpreter(method.instructions), node.name, method, null, 0);
+			Assert.assertEquals(method.name, describe(full.frames), describe(reanalysed.frames));
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package dev.minco.javatransformer.internal.asm;
+
+import lombok.val;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+
+public class InsnSourcesTest {
+	@Test
+	public void testUnion() {
+		val instructions = new AbstractInsnNode[]{new InsnNode(Opcodes.ICONST_0), new InsnNode(Opcodes.ICONST_1), new InsnNode(Opcodes.ICONST_2)};
+		val first = InsnSources.of(0, instructions);
+		val last = InsnSources.of(2, instructions);
+
+		val both = InsnSources.union(last, first);
+		Assert.assertEquals(2, both.size());
+		Assert.assertSame(instructions[0], both.get(0));
+		Assert.assertSame(instructions[2], both.get(1));
+		Assert.assertEquals(both, InsnSources.union(first, last));
+
+		// unions which add nothing return the existing set
+		Assert.assertSame(both, InsnSources.union(both, first));
+		Assert.assertSame(both, InsnSources.union(last, both));
+		Assert.assertSame(both, InsnSources.union(both, InsnSources.EMPTY));
+
+		val prefilled = InsnSources.union(InsnSources.PREFILLED, both);
+		Assert.assertTrue(prefilled.isPrefilled());
+		Assert.assertFalse(both.isPrefilled());
+		Assert.assertSame(CombinedValue.PREFILLED, prefilled.get(0));
+		Assert.assertEquals(3, prefilled.toSet().size());
+	}
+}
@@ -1,13 +1,39 @@
 package dev.minco.javatransformer.internal.util;
 
+import lombok.val;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.expr.Name;
 
 public class NodeUtilTest {
+	private static final String SOURCE = "package test; class A { A() { int a = 1; } abstract void b(); void c() { c(); } static class D { void c() { c(); } } }";
+
 	@Test
 	public void testQualifiedName() throws Exception {
 		Assert.assertEquals("java.lang.String", NodeUtil.qualifiedName(new Name("java.lang.String")));
 	}
+
+	@Test
+	public void testStripBodies() throws Exception {
+		val stub = JavaParser.parse(SOURCE);
+		NodeUtil.stripBodies(stub);
+		Assert.assertEquals(JavaParser.parse("package test; class A { A() {} abstract void b(); void c() {} static class D { void c() {} } }"), stub);
+	}
+
+	@Test
+	public void testFindSamePosition() throws Exception {
+		val stub = JavaParser.parse(SOURCE);
+		NodeUtil.stripBodies(stub);
+		val full = JavaParser.parse(SOURCE);
+
+		val nested = stub.getType(0).getMember(3).asTypeDeclaration().getMember(0);
+		val found = (MethodDeclaration) NodeUtil.findSamePosition(nested, full);
+		Assert.assertNotNull(found);
+		Assert.assertEquals(1, found.getBody().get().getStatements().size());
+		Assert.assertSame(full.getType(0).getMember(3).asTypeDeclaration().getMember(0), found);
+	}
 }
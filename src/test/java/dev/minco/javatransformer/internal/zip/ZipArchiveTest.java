@@ -0,0 +1,156 @@
+package dev.minco.javatransformer.internal.zip;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import lombok.val;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipArchiveTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] content(int i) {
+		val builder = new StringBuilder();
+		for (int j = 0; j < 100; j++)
+			builder.append("entry ").append(i).append(' ').append(j).append('\n');
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private Path makeZip() throws Exception {
+		val zip = folder.getRoot().toPath().resolve("input.zip");
+		try (ZipOutputStream os = new ZipOutputStream(new FileOutputStream(zip.toFile()))) {
+			os.putNextEntry(new ZipEntry("dir/"));
+			os.closeEntry();
+			for (int i = 0; i < 10; i++) {
+				val bytes = content(i);
+				val entry = new ZipEntry("dir/entry" + i + ".txt");
+				if (i % 3 == 0) {
+					val crc = new CRC32();
+					crc.update(bytes);
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(bytes.length);
+					entry.setCrc(crc.getValue());
+				}
+				os.putNextEntry(entry);
+				os.write(bytes);
+				os.closeEntry();
+			}
+		}
+		return zip;
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		try (ZipArchive archive = ZipArchive.open(makeZip())) {
+			val entries = archive.getEntries();
+			Assert.assertEquals(11, entries.size());
+			Assert.assertTrue(entries.get(0).isDirectory());
+			Assert.assertEquals(0, archive.read(entries.get(0)).length);
+			for (int i = 0; i < 10; i++) {
+				val entry = entries.get(i + 1);
+				Assert.assertEquals("dir/entry" + i + ".txt", entry.name);
+				Assert.assertArrayEquals(content(i), archive.read(entry));
+			}
+		}
+	}
+
+	@Test
+	public void testCopyAndWrite() throws Exception {
+		val output = folder.getRoot().toPath().resolve("output.zip");
+		try (ZipArchive archive = ZipArchive.open(makeZip()); ZipArchiveWriter writer = new ZipArchiveWriter(output)) {
+			val entries = archive.getEntries();
+			for (int i = 0; i < entries.size(); i++) {
+				val entry = entries.get(i);
+				if (i % 2 == 0)
+					Assert.assertTrue(writer.copy(archive, entry));
+				else
+					Assert.assertTrue(writer.write(entry.name, archive.read(entry)));
+			}
+			Assert.assertFalse("Duplicate entries should be skipped", writer.copy(archive, entries.get(1)));
+		}
+
+		try (ZipFile zipFile = new ZipFile(output.toFile())) {
+			Assert.assertEquals(11, zipFile.size());
+			for (int i = 0; i < 10; i++) {
+				val entry = zipFile.getEntry("dir/entry" + i + ".txt");
+				Assert.assertArrayEquals(content(i), zipFile.getInputStream(entry).readAllBytes());
+				// copied entries keep their compression method, written entries are deflated
+				val expectedMethod = (i + 1) % 2 == 0 && i % 3 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+				Assert.assertEquals("Compression method for " + entry, expectedMethod, entry.getMethod());
+			}
+		}
+	}
+
+	@Test
+	public void testOpenShared() throws Exception {
+		val zip = makeZip();
+		val first = ZipArchive.openShared(zip);
+		val second = ZipArchive.openShared(zip.getParent().resolve("./input.zip"));
+		Assert.assertSame(first, second);
+
+		first.close();
+		Assert.assertArrayEquals("Archive should stay open until every user has closed it", content(0), second.read(second.getEntries().get(1)));
+		second.close();
+		try {
+			second.read(second.getEntries().get(1));
+			Assert.fail("Archive should be closed");
+		} catch (IOException ignored) {
+		}
+
+		try (ZipArchive reopened = ZipArchive.openShared(zip)) {
+			Assert.assertNotSame(first, reopened);
+			Assert.assertArrayEquals(content(0), reopened.read(reopened.getEntries().get(1)));
+		}
+	}
+
+	private static int indexOf(byte[] haystack, byte[] needle, int from) {
+		outer:
+		for (int i = from; i <= haystack.length - needle.length; i++) {
+			for (int j = 0; j < needle.length; j++)
+				if (haystack[i + j] != needle[j])
+					continue outer;
+			return i;
+		}
+		throw new AssertionError("Not found");
+	}
+
+	@Test
+	public void testCorruptEntries() throws Exception {
+		val zip = makeZip();
+		val bytes = Files.readAllBytes(zip);
+		// flip a byte of the stored data of entry0
+		bytes[indexOf(bytes, content(0), 0) + 10] ^= 1;
+		// and change the central directory's CRC of entry1, which is deflated
+		val centralSignature = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(ZipArchive.CENTRAL_HEADER_SIGNATURE).array();
+		val centralHeader = indexOf(bytes, "dir/entry1.txt".getBytes(StandardCharsets.UTF_8), indexOf(bytes, centralSignature, 0)) - ZipArchive.CENTRAL_HEADER_SIZE;
+		bytes[centralHeader + 16] ^= 1;
+		Files.write(zip, bytes);
+
+		try (ZipArchive archive = ZipArchive.open(zip)) {
+			val entries = archive.getEntries();
+			for (int i = 1; i <= 2; i++) {
+				try {
+					archive.read(entries.get(i));
+					Assert.fail("Corrupt entry " + entries.get(i) + " should fail to read");
+				} catch (ZipException ignored) {
+				}
+			}
+			Assert.assertArrayEquals(content(2), archive.read(entries.get(3)));
+		}
+	}
+}